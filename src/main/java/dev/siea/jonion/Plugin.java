@@ -3,9 +3,14 @@ package dev.siea.jonion;
 import dev.siea.jonion.configuration.PluginConfig;
 import dev.siea.jonion.configuration.finder.PluginConfigurationFinder;
 import dev.siea.jonion.descriptor.PluginDescriptor;
+import dev.siea.jonion.loader.CustomClassLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
 /**
  * Base class for all plugins loaded by the plugin system.
  * <p>
@@ -19,7 +24,8 @@ import org.slf4j.LoggerFactory;
  * <p>
  * This class provides access to the owning {@link PluginWrapper}, plugin
  * {@link PluginDescriptor} (metadata), a dedicated {@link Logger}, and
- * configuration via {@link PluginConfig} (default and named configs).
+ * configuration via {@link PluginConfig} (default and named configs). Files bundled in
+ * the plugin JAR can be read with {@link #getResourceBuffer(String)}.
  * </p>
  *
  * @see PluginWrapper
@@ -81,7 +87,7 @@ public abstract class Plugin {
      * @return the default plugin configuration; may create the file if missing
      */
     public final PluginConfig getDefaultConfig() {
-        return configurationFinder.findPluginConfiguration(pluginDescriptor.getPluginId(), pluginWrapper.getPath());
+        return configurationFinder.findPluginConfiguration(pluginDescriptor.getPluginId(), pluginWrapper.getPluginArchive());
     }
 
     /**
@@ -91,6 +97,28 @@ public abstract class Plugin {
      * @return the plugin configuration for that file; may create it if missing
      */
     public final PluginConfig getConfig(String configFileName) {
-        return configurationFinder.findPluginConfiguration(pluginDescriptor.getPluginId(), pluginWrapper.getPath(), configFileName);
+        return configurationFinder.findPluginConfiguration(pluginDescriptor.getPluginId(), pluginWrapper.getPluginArchive(), configFileName);
+    }
+
+    /**
+     * Returns a resource bundled with this plugin as a read-only buffer. Like other resource
+     * lookups this asks the parent class loader first. A resource stored uncompressed in the
+     * plugin JAR is a view of the memory-mapped JAR and can be written to a channel without
+     * being copied; a compressed one is inflated into a new buffer.
+     *
+     * @param name the resource name, relative to the root of the JAR and without a leading
+     *             slash (e.g. {@code "templates/index.html"})
+     * @return the resource contents, or null if there is no such resource
+     * @throws IOException if the resource cannot be read
+     * @see CustomClassLoader#getResourceBuffer(String)
+     */
+    public final ByteBuffer getResourceBuffer(String name) throws IOException {
+        ClassLoader classLoader = getClass().getClassLoader();
+        if (classLoader instanceof CustomClassLoader) {
+            return ((CustomClassLoader) classLoader).getResourceBuffer(name);
+        }
+        try (InputStream inputStream = classLoader.getResourceAsStream(name)) {
+            return inputStream != null ? ByteBuffer.wrap(inputStream.readAllBytes()).asReadOnlyBuffer() : null;
+        }
     }
 }
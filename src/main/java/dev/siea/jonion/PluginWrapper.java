@@ -1,13 +1,24 @@
 package dev.siea.jonion;
 
+import dev.siea.jonion.archive.PluginArchive;
 import dev.siea.jonion.configuration.finder.PluginConfigurationFinder;
+import dev.siea.jonion.dependency.PluginDependency;
 import dev.siea.jonion.descriptor.PluginDescriptor;
 import dev.siea.jonion.exceptions.PluginLoadException;
 import dev.siea.jonion.lifecycle.PluginState;
+import dev.siea.jonion.lifecycle.PluginStateListener;
 import dev.siea.jonion.loader.CustomClassLoader;
 import dev.siea.jonion.manager.PluginManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Wraps a single plugin with its descriptor, path, class loader, and lifecycle state.
@@ -16,7 +27,30 @@ import java.nio.file.Path;
  * discovered plugin JAR. The wrapper holds the {@link Plugin} instance after
  * {@link #load()} is called and clears it on {@link #unload()}. It provides
  * access to the plugin's metadata ({@link PluginDescriptor}), file path,
- * current {@link PluginState}, and the managing {@link PluginManager}.
+ * current {@link PluginState}, and the managing {@link PluginManager}. State changes are
+ * reported to registered {@link PluginStateListener}s, which the manager uses to keep its
+ * per-state indexes up to date.
+ * </p>
+ * <p>
+ * The wrapper is thread-safe. The state is held in an atomic reference and can be changed
+ * conditionally with {@link #compareAndSetState(PluginState, PluginState)}; the plugin instance
+ * and class loader are published through volatile fields, so {@link #getState()} never blocks
+ * and {@link #getPlugin()} only blocks while a lazily activated plugin is being loaded.
+ * {@link #load()}, {@link #activate()} and {@link #unload()} are serialized by a per-wrapper
+ * lock that readers never take. State listeners are notified only after that lock has been
+ * released, so the manager can start a freshly activated plugin, which runs arbitrary plugin
+ * code, without holding it.
+ * </p>
+ * <p>
+ * With lazy activation the manager leaves the wrapper {@link PluginState#RESOLVED} instead of
+ * loading it; the class loader and plugin instance are then created by {@link #activate()},
+ * which {@link #getPlugin()} calls on first access. Activation happens at most once, even
+ * when several threads access the plugin at the same time.
+ * </p>
+ * <p>
+ * The class loader of a plugin is linked to the class loaders of its loaded dependencies, so
+ * the plugin sees the packages they export (see {@link PluginDescriptor#getExportedPackages()}).
+ * Dependencies are therefore loaded before the plugins that depend on them.
  * </p>
  *
  * @see Plugin
@@ -25,13 +59,23 @@ import java.nio.file.Path;
  * @see dev.siea.jonion.manager.PluginManager
  */
 public class PluginWrapper {
+    private static final Logger log = LoggerFactory.getLogger(PluginWrapper.class);
+
     private final PluginDescriptor pluginDescriptor;
-    private final Path path;
+    private final PluginArchive archive;
     private final PluginManager pluginManager;
     private final PluginConfigurationFinder configurationFinder;
-    private Plugin plugin;
-    private CustomClassLoader classLoader;
-    private PluginState state = PluginState.CREATED;
+    private final List<PluginStateListener> stateListeners = new CopyOnWriteArrayList<>();
+    private final AtomicReference<PluginState> state = new AtomicReference<>(PluginState.CREATED);
+    private final Object lifecycleLock = new Object();
+    /** State changes made under {@link #lifecycleLock} that listeners have not been told about yet; guarded by it. */
+    private final List<PluginState[]> pendingStateChanges = new ArrayList<>();
+    /** Deferred state changes whose listeners have not finished yet; guarded by {@link #lifecycleLock}. */
+    private int notificationsInFlight;
+    private volatile Plugin plugin;
+    private volatile CustomClassLoader classLoader;
+    private volatile long lastAccessNanos = System.nanoTime();
+    private volatile long loadNanos;
 
     /**
      * Creates a wrapper for a plugin. The plugin is not loaded until {@link #load()} is called.
@@ -42,14 +86,28 @@ public class PluginWrapper {
      * @param path                  the path to the plugin JAR
      */
     public PluginWrapper(PluginManager pluginManager, PluginDescriptor pluginDescriptor, PluginConfigurationFinder configurationFinder, Path path) {
+        this(pluginManager, pluginDescriptor, configurationFinder, new PluginArchive(path));
+    }
+
+    /**
+     * Creates a wrapper for a plugin backed by a shared archive handle, which is reused when the
+     * plugin is loaded and when its configuration is looked up. The wrapper does not take a
+     * reference on the archive; whoever retained it for discovery releases it.
+     *
+     * @param pluginManager         the manager that owns this wrapper
+     * @param pluginDescriptor     the plugin metadata
+     * @param configurationFinder  the finder for plugin configuration files
+     * @param archive               the shared handle to the plugin JAR
+     */
+    public PluginWrapper(PluginManager pluginManager, PluginDescriptor pluginDescriptor, PluginConfigurationFinder configurationFinder, PluginArchive archive) {
         this.pluginManager = pluginManager;
         this.pluginDescriptor = pluginDescriptor;
         this.configurationFinder = configurationFinder;
-        this.path = path;
+        this.archive = archive;
     }
 
     /**
-     * Loads the plugin: creates a class loader from the JAR path, instantiates the plugin
+     * Loads the plugin: creates a class loader from the plugin archive, instantiates the plugin
      * via {@link PluginFactory}, and sets state to {@link PluginState#LOADED}.
      * On failure, state is set to {@link PluginState#FAILED}.
      *
@@ -57,32 +115,222 @@ public class PluginWrapper {
      */
     public void load() throws PluginLoadException {
         try {
-            this.classLoader = new CustomClassLoader(path, PluginWrapper.class.getClassLoader());
-            this.plugin = PluginFactory.createPlugin(pluginDescriptor, classLoader);
-            plugin.load(this, pluginDescriptor, configurationFinder);
-            state = PluginState.LOADED;
+            synchronized (lifecycleLock) {
+                loadInstance();
+            }
+        } finally {
+            firePendingStateChanges();
+        }
+    }
+
+    /**
+     * Loads a {@link PluginState#RESOLVED} plugin on first use, after activating the plugins
+     * it depends on. Does nothing (and returns the current instance) in any other state, so it
+     * is safe to call repeatedly and from several threads; the plugin is loaded only once.
+     * <p>
+     * A failing optional dependency is tolerated. If a required dependency cannot be
+     * activated, this plugin is set to {@link PluginState#FAILED} without being loaded.
+     * </p>
+     *
+     * @return the plugin instance, or null if the plugin is not loaded
+     * @throws PluginLoadException if this plugin or one of its required dependencies cannot be loaded
+     */
+    public Plugin activate() throws PluginLoadException {
+        if (state.get() != PluginState.RESOLVED) {
+            return plugin;
+        }
+        // Dependencies are activated before taking this plugin's lock; the resolved graph is
+        // acyclic, so concurrent activations lock wrappers in a consistent order.
+        for (PluginDependency dependency : pluginDescriptor.getDependencies()) {
+            activateDependency(dependency);
+        }
+        try {
+            synchronized (lifecycleLock) {
+                if (state.get() == PluginState.RESOLVED) {
+                    loadInstance();
+                }
+            }
+        } finally {
+            firePendingStateChanges();
+        }
+        return plugin;
+    }
+
+    private void activateDependency(PluginDependency dependency) throws PluginLoadException {
+        PluginWrapper dependencyPlugin = pluginManager.getPlugin(dependency.getPluginId());
+        PluginLoadException failure = null;
+        if (dependencyPlugin != null) {
+            try {
+                dependencyPlugin.activate();
+            } catch (PluginLoadException e) {
+                failure = e;
+            }
+        }
+        if (!dependency.isOptional() && (dependencyPlugin == null || dependencyPlugin.getState() != PluginState.LOADED)) {
+            compareAndSetState(PluginState.RESOLVED, PluginState.FAILED);
+            String message = "Required dependency " + dependency.getPluginId() + " of plugin " + pluginDescriptor.getPluginId() + " could not be activated";
+            throw failure != null ? new PluginLoadException(message, failure) : new PluginLoadException(message);
+        }
+    }
+
+    private void loadInstance() throws PluginLoadException {
+        long begin = System.nanoTime();
+        CustomClassLoader loader = null;
+        try {
+            loader = new CustomClassLoader(archive, PluginWrapper.class.getClassLoader(),
+                    pluginDescriptor.getExportedPackages(), dependencyClassLoaders());
+            Plugin instance = PluginFactory.createPlugin(pluginDescriptor, loader);
+            instance.load(this, pluginDescriptor, configurationFinder);
+            this.classLoader = loader;
+            this.plugin = instance;
+            long end = System.nanoTime();
+            loadNanos = end - begin;
+            lastAccessNanos = end;
+            setState(PluginState.LOADED);
         } catch (Throwable e) {
-            state = PluginState.FAILED;
+            closeClassLoader(loader);
+            setState(PluginState.FAILED);
             throw new PluginLoadException(e.getMessage(), e);
         }
     }
 
-    /** Unloads the plugin by clearing the instance and class loader and setting state to {@link PluginState#UNLOADED}. */
+    /** Returns the class loaders of the dependencies that are currently loaded, in declaration order. */
+    private List<CustomClassLoader> dependencyClassLoaders() {
+        List<CustomClassLoader> loaders = new ArrayList<>();
+        for (PluginDependency dependency : pluginDescriptor.getDependencies()) {
+            PluginWrapper dependencyPlugin = pluginManager.getPlugin(dependency.getPluginId());
+            CustomClassLoader loader = dependencyPlugin != null ? dependencyPlugin.getClassLoader() : null;
+            if (loader != null) {
+                loaders.add(loader);
+            }
+        }
+        return loaders;
+    }
+
+    /**
+     * Unloads the plugin by setting state to {@link PluginState#UNLOADED}, clearing the
+     * instance and closing the class loader, which releases the JAR files it has open. The
+     * state changes first, so a reader that still obtains the instance afterwards sees it as
+     * unloaded. Classes of the plugin that are already loaded keep working, but it cannot load
+     * further classes or resources.
+     */
     public void unload() {
-        plugin = null;
-        classLoader = null;
-        state = PluginState.UNLOADED;
+        try {
+            synchronized (lifecycleLock) {
+                setState(PluginState.UNLOADED);
+                plugin = null;
+                closeClassLoader(classLoader);
+                classLoader = null;
+            }
+        } finally {
+            firePendingStateChanges();
+        }
+    }
+
+    /**
+     * Returns a {@link PluginState#LOADED} plugin to {@link PluginState#RESOLVED}, dropping the
+     * instance and closing the class loader so they can be garbage collected. The plugin is loaded again
+     * on its next access. Used by the manager to evict idle plugins; the caller is responsible
+     * for stopping the plugin first, see {@link #deactivate(Runnable)}.
+     *
+     * @return true if the plugin was loaded and has been deactivated
+     */
+    public boolean deactivate() {
+        return deactivate(null);
+    }
+
+    /**
+     * Deactivates a {@link PluginState#LOADED} plugin like {@link #deactivate()}, first running
+     * {@code beforeDeactivate} (typically stopping the plugin) under the same lock. The plugin
+     * cannot be activated or deactivated by another thread in between, so it is never stopped
+     * without being deactivated or deactivated without being stopped. The callback is not run
+     * if the plugin is not loaded, or if the listeners of its last state change (which start
+     * a freshly activated plugin) have not finished yet.
+     *
+     * @param beforeDeactivate the action to run while the plugin is still loaded, or null
+     * @return true if the plugin was loaded and has been deactivated; false if it was not
+     *         loaded or {@code beforeDeactivate} moved it out of {@link PluginState#LOADED}
+     */
+    public boolean deactivate(Runnable beforeDeactivate) {
+        try {
+            synchronized (lifecycleLock) {
+                // A plugin whose activation listeners are still running (being started) is left alone.
+                if (state.get() != PluginState.LOADED || notificationsInFlight > 0) {
+                    return false;
+                }
+                if (beforeDeactivate != null) {
+                    beforeDeactivate.run();
+                }
+                if (!compareAndSetState(PluginState.LOADED, PluginState.RESOLVED)) {
+                    return false;
+                }
+                plugin = null;
+                closeClassLoader(classLoader);
+                classLoader = null;
+                return true;
+            }
+        } finally {
+            firePendingStateChanges();
+        }
+    }
+
+    private void closeClassLoader(CustomClassLoader loader) {
+        if (loader == null) {
+            return;
+        }
+        try {
+            loader.close();
+        } catch (IOException e) {
+            log.warn("Failed to close class loader of plugin {}: {}", pluginDescriptor.getPluginId(), e.getMessage(), e);
+        }
     }
 
     /**
      * Returns the loaded plugin instance. Null before {@link #load()} or after {@link #unload()}.
+     * A {@link PluginState#RESOLVED} plugin is {@link #activate() activated} first; if that
+     * fails, the error is logged and null is returned. Every call counts as an access for
+     * {@link #getLastAccessNanos()}.
      *
      * @return the plugin instance, or null if not loaded
      */
     public Plugin getPlugin() {
+        lastAccessNanos = System.nanoTime();
+        if (state.get() == PluginState.RESOLVED) {
+            try {
+                return activate();
+            } catch (PluginLoadException e) {
+                log.error("Failed to activate plugin: {}", pluginDescriptor.getPluginId(), e);
+                return null;
+            }
+        }
         return plugin;
     }
 
+    /**
+     * Returns the class loader of the loaded plugin, or null if the plugin is not loaded.
+     * Unlike {@link #getPlugin()}, this neither activates the plugin nor counts as an access.
+     */
+    public CustomClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} of the last {@link #getPlugin()} call or load,
+     * whichever is later; the manager uses it to find idle plugins.
+     */
+    public long getLastAccessNanos() {
+        return lastAccessNanos;
+    }
+
+    /**
+     * Returns how long the last successful load or activation took to create the class loader
+     * and instantiate the plugin, not counting its dependencies. Zero if the plugin has never
+     * been loaded.
+     */
+    public Duration getLoadTime() {
+        return Duration.ofNanos(loadNanos);
+    }
+
     /** Returns the plugin metadata (ID, version, class name, dependencies, etc.). */
     public PluginDescriptor getPluginDescriptor() {
         return pluginDescriptor;
@@ -90,16 +338,100 @@ public class PluginWrapper {
 
     /** Returns the current lifecycle state of this plugin. */
     public PluginState getState() {
-        return state;
+        return state.get();
     }
 
     /**
-     * Sets the lifecycle state (e.g. to {@link PluginState#FAILED} when dependency resolution fails).
+     * Sets the lifecycle state (e.g. to {@link PluginState#FAILED} when dependency resolution fails)
+     * and notifies the registered {@link PluginStateListener}s if it changed.
      *
      * @param state the new state
      */
     public void setState(PluginState state) {
-        this.state = state;
+        PluginState oldState = this.state.getAndSet(state);
+        if (oldState != state) {
+            fireStateChanged(oldState, state);
+        }
+    }
+
+    /**
+     * Atomically changes the state if it currently equals {@code expected}, notifying the
+     * registered {@link PluginStateListener}s on success. Used to claim a transition (e.g.
+     * {@code LOADED -> FAILED}) that must happen at most once when several threads race.
+     *
+     * @param expected the state the plugin must be in
+     * @param newState the state to move to
+     * @return true if the state was changed
+     */
+    public boolean compareAndSetState(PluginState expected, PluginState newState) {
+        if (!state.compareAndSet(expected, newState)) {
+            return false;
+        }
+        if (expected != newState) {
+            fireStateChanged(expected, newState);
+        }
+        return true;
+    }
+
+    private void fireStateChanged(PluginState oldState, PluginState newState) {
+        if (Thread.holdsLock(lifecycleLock)) {
+            // Listeners run plugin code (a loaded plugin is started); keep it out of the lock.
+            pendingStateChanges.add(new PluginState[]{oldState, newState});
+            notificationsInFlight++;
+            return;
+        }
+        notifyListeners(oldState, newState);
+    }
+
+    /**
+     * Notifies the listeners of the state changes made while the lifecycle lock was held, once
+     * the calling thread has released it (a nested lifecycle call leaves them to the outermost).
+     */
+    private void firePendingStateChanges() {
+        if (Thread.holdsLock(lifecycleLock)) {
+            return;
+        }
+        List<PluginState[]> changes;
+        synchronized (lifecycleLock) {
+            if (pendingStateChanges.isEmpty()) {
+                return;
+            }
+            changes = new ArrayList<>(pendingStateChanges);
+            pendingStateChanges.clear();
+        }
+        try {
+            for (PluginState[] change : changes) {
+                notifyListeners(change[0], change[1]);
+            }
+        } finally {
+            synchronized (lifecycleLock) {
+                notificationsInFlight -= changes.size();
+            }
+        }
+    }
+
+    private void notifyListeners(PluginState oldState, PluginState newState) {
+        for (PluginStateListener listener : stateListeners) {
+            listener.onStateChanged(this, oldState, newState);
+        }
+    }
+
+    /**
+     * Registers a listener that is notified after every state change of this plugin.
+     *
+     * @param listener the listener to add
+     */
+    public void addStateListener(PluginStateListener listener) {
+        stateListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener registered with {@link #addStateListener(PluginStateListener)}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeStateListener(PluginStateListener listener) {
+        stateListeners.remove(listener);
     }
 
     /** Returns the plugin manager that owns this wrapper. */
@@ -109,6 +441,11 @@ public class PluginWrapper {
 
     /** Returns the path to the plugin JAR file. */
     public Path getPath() {
-        return path;
+        return archive.getPath();
+    }
+
+    /** Returns the shared handle to the plugin JAR (cached entry names, manifest and descriptor bytes). */
+    public PluginArchive getPluginArchive() {
+        return archive;
     }
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package dev.siea.jonion.annotation;
+
+import dev.siea.jonion.lifecycle.PluginTier;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a plugin's metadata on its main class, replacing a hand-written {@code plugin.yml}.
+ * <p>
+ * When the plugin is compiled with the
+ * {@link dev.siea.jonion.annotation.processor.JonionPluginProcessor} enabled (it is not
+ * discovered from the classpath; pass Jonion with {@code -processorpath} or list it under the
+ * compiler plugin's {@code annotationProcessorPaths}), the processor validates the annotated
+ * class and generates both a {@code plugin.yml} (for {@link dev.siea.jonion.descriptor.finder.YamlDescriptorFinder})
+ * and a binary descriptor index read by
+ * {@link dev.siea.jonion.descriptor.finder.GeneratedDescriptorFinder} without any YAML parsing.
+ * Errors such as a missing no-argument constructor or a duplicate dependency are reported as
+ * compilation errors instead of at plugin load time.
+ * </p>
+ * <p>
+ * Example:
+ * </p>
+ * <pre>{@code
+ * @JonionPlugin(id = "economy", version = "1.2.0",
+ *         dependencies = @JonionPlugin.Dependency(id = "storage"))
+ * public class EconomyPlugin extends Plugin { ... }
+ * }</pre>
+ *
+ * @see dev.siea.jonion.annotation.processor.JonionPluginProcessor
+ * @see dev.siea.jonion.descriptor.finder.GeneratedDescriptorFinder
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface JonionPlugin {
+    /** The unique plugin ID (the {@code name} key of {@code plugin.yml}). */
+    String id();
+
+    /** The plugin version. */
+    String version() default "UNDEFINED";
+
+    /** A short description of the plugin. */
+    String description() default "";
+
+    /** The plugin authors. */
+    String[] authors() default {};
+
+    /** The plugin license. */
+    String license() default "UNDEFINED";
+
+    /** The startup tier of the plugin. */
+    PluginTier tier() default PluginTier.NORMAL;
+
+    /** Plugins this plugin depends on. */
+    Dependency[] dependencies() default {};
+
+    /**
+     * Packages made available to dependent plugins. When empty, every package containing a
+     * class compiled together with the plugin is exported.
+     */
+    String[] exports() default {};
+
+    /**
+     * A dependency on another plugin, declared inside {@link JonionPlugin#dependencies()}.
+     */
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target({})
+    @interface Dependency {
+        /** The ID of the plugin depended on. */
+        String id();
+
+        /** Whether the plugin can be loaded without this dependency. */
+        boolean optional() default false;
+    }
+}
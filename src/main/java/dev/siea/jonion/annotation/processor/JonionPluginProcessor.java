@@ -0,0 +1,256 @@
+package dev.siea.jonion.annotation.processor;
+
+import dev.siea.jonion.annotation.JonionPlugin;
+import dev.siea.jonion.dependency.PluginDependency;
+import dev.siea.jonion.descriptor.DefaultPluginDescriptor;
+import dev.siea.jonion.descriptor.DescriptorCodec;
+import dev.siea.jonion.descriptor.PluginDescriptor;
+import dev.siea.jonion.descriptor.finder.GeneratedDescriptorFinder;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Annotation processor for {@link JonionPlugin}.
+ * <p>
+ * Validates the annotated main class at compile time (a public, concrete, top-level or static
+ * nested subclass of {@link dev.siea.jonion.Plugin} with a public no-argument constructor, a
+ * non-blank ID and no duplicate or self dependencies) and, once all rounds are complete,
+ * writes two resources to the class output:
+ * </p>
+ * <ul>
+ *     <li>{@code plugin.yml}, so the JAR still works with {@link dev.siea.jonion.descriptor.finder.YamlDescriptorFinder}</li>
+ *     <li>{@value GeneratedDescriptorFinder#INDEX_FILE}, the binary index read by
+ *     {@link GeneratedDescriptorFinder}</li>
+ * </ul>
+ * <p>
+ * When {@link JonionPlugin#exports()} is empty, the exported packages are the packages of all
+ * classes compiled together with the plugin.
+ * </p>
+ * <p>
+ * The processor is not registered as a service, so having Jonion on the compile classpath does
+ * not run it. Plugins enable it explicitly, e.g. with
+ * {@code javac -processorpath jonion.jar -processor dev.siea.jonion.annotation.processor.JonionPluginProcessor}
+ * or by listing Jonion under {@code annotationProcessorPaths} of the Maven compiler plugin.
+ * It supports only {@link JonionPlugin}, is not called for compilations without it and never
+ * claims the annotation, so other processors keep running.
+ * </p>
+ *
+ * @see JonionPlugin
+ * @see GeneratedDescriptorFinder
+ */
+public class JonionPluginProcessor extends AbstractProcessor {
+    private static final String PLUGIN_CLASS = "dev.siea.jonion.Plugin";
+    private static final String YAML_FILE = "plugin.yml";
+
+    private final Set<String> compiledPackages = new TreeSet<>();
+    private DefaultPluginDescriptor descriptor;
+    private Element pluginElement;
+    private boolean failed;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Set.of(JonionPlugin.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element root : roundEnv.getRootElements()) {
+            PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(root);
+            if (!packageElement.isUnnamed()) {
+                compiledPackages.add(packageElement.getQualifiedName().toString());
+            }
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(JonionPlugin.class)) {
+            processPlugin(element);
+        }
+        if (roundEnv.processingOver() && descriptor != null && !failed) {
+            if (descriptor.getExportedPackages().isEmpty()) {
+                compiledPackages.forEach(descriptor::addExportedPackage);
+            }
+            writeResources();
+        }
+        return false;
+    }
+
+    private void processPlugin(Element element) {
+        JonionPlugin annotation = element.getAnnotation(JonionPlugin.class);
+        if (pluginElement != null) {
+            error(element, "Only one @JonionPlugin class is allowed per plugin; already declared on " + pluginElement);
+            return;
+        }
+        pluginElement = element;
+        if (!validateClass(element)) {
+            failed = true;
+            return;
+        }
+
+        String id = annotation.id().trim();
+        if (id.isEmpty()) {
+            error(element, "@JonionPlugin id must not be blank");
+            failed = true;
+            return;
+        }
+        String pluginClass = processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString();
+        DefaultPluginDescriptor pluginDescriptor = new DefaultPluginDescriptor(id, annotation.description(), annotation.version(),
+                pluginClass, Arrays.asList(annotation.authors()), annotation.license());
+        pluginDescriptor.setTier(annotation.tier());
+
+        Set<String> dependencyIds = new HashSet<>();
+        for (JonionPlugin.Dependency dependency : annotation.dependencies()) {
+            String dependencyId = dependency.id().trim();
+            if (dependencyId.isEmpty()) {
+                error(element, "Dependency id must not be blank");
+                failed = true;
+            } else if (dependencyId.equals(id)) {
+                error(element, "Plugin " + id + " cannot depend on itself");
+                failed = true;
+            } else if (!dependencyIds.add(dependencyId)) {
+                error(element, "Duplicate dependency " + dependencyId);
+                failed = true;
+            } else {
+                pluginDescriptor.addDependency(new PluginDependency(dependencyId, dependency.optional()));
+            }
+        }
+        for (String exportedPackage : annotation.exports()) {
+            if (!SourceVersion.isName(exportedPackage)) {
+                error(element, "Invalid exported package name: " + exportedPackage);
+                failed = true;
+            } else {
+                pluginDescriptor.addExportedPackage(exportedPackage);
+            }
+        }
+        descriptor = pluginDescriptor;
+    }
+
+    private boolean validateClass(Element element) {
+        if (element.getKind() != ElementKind.CLASS) {
+            error(element, "@JonionPlugin can only be placed on a class");
+            return false;
+        }
+        TypeElement type = (TypeElement) element;
+        boolean valid = true;
+        Set<Modifier> modifiers = type.getModifiers();
+        if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.ABSTRACT)) {
+            error(element, "Plugin class must be public and not abstract");
+            valid = false;
+        }
+        if (type.getNestingKind() != NestingKind.TOP_LEVEL
+                && (type.getNestingKind() != NestingKind.MEMBER || !modifiers.contains(Modifier.STATIC))) {
+            error(element, "Plugin class must be a top-level or static nested class");
+            valid = false;
+        }
+        TypeElement pluginType = processingEnv.getElementUtils().getTypeElement(PLUGIN_CLASS);
+        if (pluginType != null) {
+            TypeMirror pluginMirror = processingEnv.getTypeUtils().erasure(pluginType.asType());
+            if (!processingEnv.getTypeUtils().isSubtype(type.asType(), pluginMirror)) {
+                error(element, "Plugin class must extend " + PLUGIN_CLASS);
+                valid = false;
+            }
+        }
+        boolean hasConstructor = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                hasConstructor = true;
+                break;
+            }
+        }
+        if (!hasConstructor) {
+            error(element, "Plugin class must declare a public no-argument constructor");
+            valid = false;
+        }
+        return valid;
+    }
+
+    private void writeResources() {
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", GeneratedDescriptorFinder.INDEX_FILE, pluginElement);
+            try (DataOutputStream out = new DataOutputStream(index.openOutputStream())) {
+                DescriptorCodec.writeIndex(out, descriptor);
+            }
+            FileObject yaml = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", YAML_FILE, pluginElement);
+            try (OutputStream out = yaml.openOutputStream()) {
+                out.write(toYaml(descriptor).getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            error(pluginElement, "Failed to write plugin descriptor: " + e.getMessage());
+        }
+    }
+
+    private static String toYaml(PluginDescriptor descriptor) {
+        StringBuilder yaml = new StringBuilder("# Generated from @JonionPlugin - do not edit\n");
+        yaml.append("name: ").append(quote(descriptor.getPluginId())).append('\n');
+        yaml.append("main: ").append(quote(descriptor.getPluginClass())).append('\n');
+        yaml.append("version: ").append(quote(descriptor.getVersion())).append('\n');
+        yaml.append("description: ").append(quote(descriptor.getDescription())).append('\n');
+        yaml.append("license: ").append(quote(descriptor.getLicense())).append('\n');
+        yaml.append("tier: ").append(descriptor.getTier().name().toLowerCase(Locale.ROOT)).append('\n');
+        appendList(yaml, "authors", descriptor.getAuthors());
+        if (!descriptor.getDependencies().isEmpty()) {
+            yaml.append("dependencies:\n");
+            for (PluginDependency dependency : descriptor.getDependencies()) {
+                yaml.append("  ").append(quote(dependency.getPluginId())).append(": ").append(dependency.isOptional()).append('\n');
+            }
+        }
+        appendList(yaml, "exports", descriptor.getExportedPackages());
+        return yaml.toString();
+    }
+
+    private static void appendList(StringBuilder yaml, String key, List<String> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+        yaml.append(key).append(":\n");
+        for (String value : values) {
+            yaml.append("  - ").append(quote(value)).append('\n');
+        }
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\t': quoted.append("\\t"); break;
+                default: quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private void error(Element element, String message) {
+        Messager messager = processingEnv.getMessager();
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,471 @@
+package dev.siea.jonion.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Minimal read-only ZIP reader working directly on a memory-mapped file.
+ * <p>
+ * Only the end-of-central-directory record and the central directory are parsed; entry
+ * lookups compare the encoded name bytes in place, so finding a single entry (such as a plugin
+ * descriptor) allocates nothing per scanned entry. A name-to-entry index is built only when
+ * {@link #getEntryNames()} is first called. Entry contents are served straight from the
+ * mapping: stored entries as a read-only slice, deflated entries inflated from the mapped
+ * bytes. ZIP64 archives are supported; encrypted entries and methods other than stored and
+ * deflated are not.
+ * </p>
+ * <p>
+ * A reader can also be created over a buffer that is already in memory with
+ * {@link #of(ByteBuffer)}, which is how JARs nested in a plugin JAR are read without
+ * extracting them.
+ * </p>
+ * <p>
+ * There is nothing to close: the mapping is released when this object becomes unreachable.
+ * Instances are safe for concurrent reads.
+ * </p>
+ *
+ * @see PluginArchive
+ */
+public final class MappedZipFile {
+    /** Compression method of entries stored without compression. */
+    public static final int STORED = 0;
+    /** Compression method of deflated entries. */
+    public static final int DEFLATED = 8;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int MAX_DEFLATE_RATIO = 1032;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    private final ByteBuffer buffer;
+    private final int centralDirectoryOffset;
+    private final int centralDirectoryEnd;
+    private final int entryCount;
+    private volatile Map<String, Entry> index;
+
+    private MappedZipFile(ByteBuffer buffer) throws ZipException {
+        this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int end = findEndOfCentralDirectory();
+        long count = u16(end + 10);
+        long size = u32(end + 12);
+        long offset = u32(end + 16);
+        if (count == 0xFFFF || size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL) {
+            int locator = end - 20;
+            if (locator >= 0 && this.buffer.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+                int zip64End = checkedOffset(this.buffer.getLong(locator + 8));
+                if (zip64End > locator - ZIP64_END_SIZE || this.buffer.getInt(zip64End) != ZIP64_END_SIGNATURE) {
+                    throw new ZipException("Invalid ZIP64 end of central directory");
+                }
+                count = this.buffer.getLong(zip64End + 32);
+                size = this.buffer.getLong(zip64End + 40);
+                offset = this.buffer.getLong(zip64End + 48);
+            }
+        }
+        if (count < 0 || count > Integer.MAX_VALUE || size < 0 || offset < 0 || offset > this.buffer.limit() - size) {
+            throw new ZipException("Invalid central directory");
+        }
+        this.entryCount = (int) count;
+        this.centralDirectoryOffset = (int) offset;
+        this.centralDirectoryEnd = (int) (offset + size);
+    }
+
+    /**
+     * Maps the given ZIP file and reads its end-of-central-directory record.
+     *
+     * @param path path to the ZIP or JAR file
+     * @return the reader
+     * @throws IOException if the file cannot be mapped or is not a valid ZIP file
+     */
+    public static MappedZipFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new ZipException("ZIP file too large to map: " + path);
+            }
+            return new MappedZipFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Reads a ZIP file that is already in memory, such as a library JAR stored inside a plugin
+     * JAR. Passing the {@link #getContent(Entry) content} of a stored entry reads the nested
+     * file straight from the outer mapping without copying it.
+     *
+     * @param buffer the complete ZIP file, from its position to its limit
+     * @return the reader
+     * @throws ZipException if the buffer does not hold a valid ZIP file
+     */
+    public static MappedZipFile of(ByteBuffer buffer) throws ZipException {
+        return new MappedZipFile(buffer.slice());
+    }
+
+    /** Returns the number of entries in the central directory. */
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Looks up an entry by name. Without an index this scans the central directory comparing
+     * raw name bytes, which avoids decoding every entry name.
+     *
+     * @param name the entry name (e.g. {@code plugin.yml})
+     * @return the entry, or {@code null} if there is none with that name
+     * @throws ZipException if the central directory is malformed
+     */
+    public Entry getEntry(String name) throws ZipException {
+        Map<String, Entry> entries = index;
+        if (entries != null) {
+            return entries.get(name);
+        }
+        byte[] target = name.getBytes(StandardCharsets.UTF_8);
+        int position = centralDirectoryOffset;
+        for (int i = 0; i < entryCount; i++) {
+            checkCentralHeader(position);
+            int nameLength = u16(position + 28);
+            if (nameLength == target.length && nameEquals(position + CENTRAL_HEADER_SIZE, target)) {
+                return readEntry(position, name);
+            }
+            position = nextCentralHeader(position);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the names of all entries, building the name index on first use.
+     *
+     * @return an unmodifiable set of entry names
+     * @throws ZipException if the central directory is malformed
+     */
+    public Set<String> getEntryNames() throws ZipException {
+        return Collections.unmodifiableSet(index().keySet());
+    }
+
+    private Map<String, Entry> index() throws ZipException {
+        Map<String, Entry> entries = index;
+        if (entries == null) {
+            entries = new HashMap<>(entryCount * 4 / 3 + 1);
+            int position = centralDirectoryOffset;
+            for (int i = 0; i < entryCount; i++) {
+                checkCentralHeader(position);
+                int nameLength = u16(position + 28);
+                String name = decode(position + CENTRAL_HEADER_SIZE, nameLength);
+                entries.putIfAbsent(name, readEntry(position, name));
+                position = nextCentralHeader(position);
+            }
+            index = entries;
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the entry's contents as a read-only buffer. Stored entries are a slice of the
+     * mapping and involve no copy; deflated entries are inflated into a new heap buffer.
+     *
+     * @param entry an entry of this file
+     * @return the uncompressed contents
+     * @throws IOException if the entry cannot be read or inflated
+     */
+    public ByteBuffer getContent(Entry entry) throws IOException {
+        ByteBuffer data = rawData(entry);
+        if (entry.method == STORED) {
+            return data.asReadOnlyBuffer();
+        }
+        return ByteBuffer.wrap(inflate(entry, data)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Reads the entry's uncompressed contents into a new array.
+     *
+     * @param entry an entry of this file
+     * @return the uncompressed contents
+     * @throws IOException if the entry cannot be read or inflated
+     */
+    public byte[] readAllBytes(Entry entry) throws IOException {
+        ByteBuffer data = rawData(entry);
+        if (entry.method == STORED) {
+            byte[] content = new byte[data.remaining()];
+            data.get(content);
+            return content;
+        }
+        return inflate(entry, data);
+    }
+
+    /**
+     * Opens a stream over the entry's uncompressed contents. A stored entry is read straight
+     * from the mapping; a deflated one is inflated into memory first.
+     *
+     * @param entry an entry of this file
+     * @return a stream over the contents
+     * @throws IOException if the entry cannot be read or inflated
+     */
+    public InputStream getInputStream(Entry entry) throws IOException {
+        if (entry.method == STORED) {
+            return new BufferInputStream(rawData(entry));
+        }
+        return new ByteArrayInputStream(inflate(entry, rawData(entry)));
+    }
+
+    private ByteBuffer rawData(Entry entry) throws ZipException {
+        int header = checkedOffset(entry.localHeaderOffset);
+        if (header > buffer.limit() - LOCAL_HEADER_SIZE || buffer.getInt(header) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for entry " + entry.name);
+        }
+        long start = (long) header + LOCAL_HEADER_SIZE + u16(header + 26) + u16(header + 28);
+        if (start > buffer.limit() - entry.compressedSize) {
+            throw new ZipException("Truncated entry " + entry.name);
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.position((int) start).limit((int) (start + entry.compressedSize));
+        return data.slice();
+    }
+
+    private static byte[] inflate(Entry entry, ByteBuffer data) throws IOException {
+        if (entry.method != DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.method + " for entry " + entry.name);
+        }
+        if (entry.size > Integer.MAX_VALUE) {
+            throw new ZipException("Entry too large: " + entry.name);
+        }
+        // Deflate cannot expand data by more than about 1032:1, so a larger size is corrupt and
+        // must not be allocated.
+        if (entry.size < 0 || entry.size > entry.compressedSize * MAX_DEFLATE_RATIO + 64) {
+            throw new ZipException("Invalid size for entry " + entry.name);
+        }
+        byte[] content = new byte[(int) entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            int length = 0;
+            while (length < content.length) {
+                int inflated = inflater.inflate(content, length, content.length - length);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != content.length) {
+                throw new ZipException("Corrupt deflated entry " + entry.name);
+            }
+            return content;
+        } catch (DataFormatException e) {
+            throw new ZipException("Corrupt deflated entry " + entry.name + ": " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private Entry readEntry(int position, String name) throws ZipException {
+        if ((u16(position + 8) & 1) != 0) {
+            throw new ZipException("Encrypted entries are not supported: " + name);
+        }
+        int method = u16(position + 10);
+        long crc = u32(position + 16);
+        long compressedSize = u32(position + 20);
+        long size = u32(position + 24);
+        long localHeaderOffset = u32(position + 42);
+
+        if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+            int extra = position + CENTRAL_HEADER_SIZE + u16(position + 28);
+            int extraEnd = extra + u16(position + 30);
+            while (extra + 4 <= extraEnd) {
+                int id = u16(extra);
+                int length = u16(extra + 2);
+                if (extra + 4 + length > extraEnd) {
+                    throw new ZipException("Invalid extra field for entry " + name);
+                }
+                if (id == 0x0001) {
+                    int needed = (size == 0xFFFFFFFFL ? 8 : 0) + (compressedSize == 0xFFFFFFFFL ? 8 : 0)
+                            + (localHeaderOffset == 0xFFFFFFFFL ? 8 : 0);
+                    if (length < needed) {
+                        throw new ZipException("Truncated ZIP64 extra field for entry " + name);
+                    }
+                    int field = extra + 4;
+                    if (size == 0xFFFFFFFFL) {
+                        size = buffer.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL) {
+                        compressedSize = buffer.getLong(field);
+                        field += 8;
+                    }
+                    if (localHeaderOffset == 0xFFFFFFFFL) {
+                        localHeaderOffset = buffer.getLong(field);
+                    }
+                    break;
+                }
+                extra += 4 + length;
+            }
+        }
+        if (size < 0 || compressedSize < 0 || localHeaderOffset < 0) {
+            throw new ZipException("Invalid sizes or offset for entry " + name);
+        }
+        return new Entry(name, method, crc, compressedSize, size, localHeaderOffset);
+    }
+
+    private int findEndOfCentralDirectory() throws ZipException {
+        int limit = buffer.limit();
+        int lowest = Math.max(0, limit - END_SIZE - MAX_COMMENT_LENGTH);
+        for (int position = limit - END_SIZE; position >= lowest; position--) {
+            if (buffer.getInt(position) == END_SIGNATURE && position + END_SIZE + u16(position + 20) <= limit) {
+                return position;
+            }
+        }
+        throw new ZipException("End of central directory not found");
+    }
+
+    /** Checks that a complete header, with its name, extra field and comment, lies within the central directory. */
+    private void checkCentralHeader(int position) throws ZipException {
+        if (position < centralDirectoryOffset || position > centralDirectoryEnd - CENTRAL_HEADER_SIZE
+                || buffer.getInt(position) != CENTRAL_HEADER_SIGNATURE
+                || (long) position + CENTRAL_HEADER_SIZE + u16(position + 28) + u16(position + 30) + u16(position + 32) > centralDirectoryEnd) {
+            throw new ZipException("Invalid central directory header at " + position);
+        }
+    }
+
+    private int nextCentralHeader(int position) {
+        return position + CENTRAL_HEADER_SIZE + u16(position + 28) + u16(position + 30) + u16(position + 32);
+    }
+
+    private boolean nameEquals(int position, byte[] target) {
+        for (int i = 0; i < target.length; i++) {
+            if (buffer.get(position + i) != target[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(int position, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int checkedOffset(long offset) throws ZipException {
+        if (offset < 0 || offset >= buffer.limit()) {
+            throw new ZipException("Offset out of range: " + offset);
+        }
+        return (int) offset;
+    }
+
+    private int u16(int position) {
+        return buffer.getShort(position) & 0xFFFF;
+    }
+
+    private long u32(int position) {
+        return buffer.getInt(position) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * A single entry from the central directory.
+     */
+    public static final class Entry {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        /** Returns the entry name. */
+        public String getName() {
+            return name;
+        }
+
+        /** Returns the compression method ({@link #STORED} or {@link #DEFLATED}). */
+        public int getMethod() {
+            return method;
+        }
+
+        /** Returns the CRC-32 of the uncompressed contents. */
+        public long getCrc() {
+            return crc;
+        }
+
+        /** Returns the compressed size in bytes. */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /** Returns the uncompressed size in bytes. */
+        public long getSize() {
+            return size;
+        }
+
+        /** Returns whether this entry denotes a directory. */
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    /** Stream over the remaining bytes of a buffer, consuming it. */
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            Objects.checkFromIndexSize(off, len, b.length);
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package dev.siea.jonion.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Shared, reference-counted handle to a plugin JAR.
+ * <p>
+ * One archive is created per JAR and discovery cycle and handed from the descriptor finder to
+ * the class loader and the configuration finder, so the JAR is opened and its central
+ * directory read only once. The entry names and manifest are cached for the lifetime of the
+ * archive; entry contents read through {@link #getInputStream(String)} are cached while the
+ * archive is retained. The JAR is read through a {@link MappedZipFile}, so no
+ * {@link JarFile} is created and looking up a single entry touches only the central directory.
+ * </p>
+ * <p>
+ * A new archive holds no references, so every read opens the JAR just for its duration.
+ * Owners that read it repeatedly call {@link #retain()} to keep the file open and entry
+ * contents cached, and {@link #release()} (or {@link #close()}) when done; when the count
+ * drops back to zero the file is closed and cached contents are discarded. The cached names
+ * and manifest survive that and keep answering lookups without I/O. All methods are
+ * thread-safe.
+ * </p>
+ *
+ * @see dev.siea.jonion.PluginWrapper#getPluginArchive()
+ * @see dev.siea.jonion.descriptor.finder.PluginDescriptorFinder#findPluginDescriptor(PluginArchive)
+ * @see dev.siea.jonion.loader.CustomClassLoader
+ */
+public final class PluginArchive implements Closeable {
+    private static final long UNKNOWN = -1L;
+
+    private final Path path;
+    private final long size;
+    private final long lastModified;
+    private final Map<String, byte[]> contentCache = new ConcurrentHashMap<>();
+    private int references;
+    private MappedZipFile zipFile;
+    private Set<String> entryNames;
+    private Manifest manifest;
+    private boolean manifestRead;
+
+    /**
+     * Creates a handle for the given JAR without any references. The file's size and
+     * last-modified time are recorded now; the JAR itself is opened on first access.
+     *
+     * @param path path to the plugin JAR file
+     */
+    public PluginArchive(Path path) {
+        this.path = path;
+        long fileSize = UNKNOWN;
+        long fileLastModified = UNKNOWN;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            fileSize = attributes.size();
+            fileLastModified = attributes.lastModifiedTime().toMillis();
+        } catch (IOException ignored) {
+            // reported when the archive is first read
+        }
+        this.size = fileSize;
+        this.lastModified = fileLastModified;
+    }
+
+    /** Returns the path to the JAR file. */
+    public Path getPath() {
+        return path;
+    }
+
+    /** Returns the size of the JAR in bytes when this archive was created, or {@code -1} if unknown. */
+    public long getSize() {
+        return size;
+    }
+
+    /** Returns the JAR's last-modified time in epoch milliseconds when this archive was created, or {@code -1} if unknown. */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Returns whether the file on disk no longer matches the size and last-modified time
+     * recorded when this archive was created, including when it was deleted.
+     *
+     * @return true if the JAR was changed or removed since this archive was created
+     */
+    public boolean isModified() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return attributes.size() != size || attributes.lastModifiedTime().toMillis() != lastModified;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns whether the archive holds an entry with the given name. Answered from the
+     * cached entry names after the first call.
+     *
+     * @param name the entry name (e.g. {@code plugin.yml})
+     * @return true if the entry exists
+     * @throws IOException if the central directory cannot be read
+     */
+    public boolean containsEntry(String name) throws IOException {
+        return getEntryNames().contains(name);
+    }
+
+    /**
+     * Returns the names of all entries in the archive, read once and cached.
+     *
+     * @return an unmodifiable set of entry names
+     * @throws IOException if the central directory cannot be read
+     */
+    public synchronized Set<String> getEntryNames() throws IOException {
+        if (entryNames == null) {
+            entryNames = acquire().getEntryNames();
+            releaseTransient();
+        }
+        return entryNames;
+    }
+
+    /**
+     * Returns the JAR manifest, read once and cached.
+     *
+     * @return the manifest, or {@code null} if the JAR has none
+     * @throws IOException if the manifest cannot be read
+     */
+    public synchronized Manifest getManifest() throws IOException {
+        if (!manifestRead) {
+            try (InputStream inputStream = getInputStream(JarFile.MANIFEST_NAME)) {
+                manifest = inputStream != null ? new Manifest(inputStream) : null;
+            }
+            manifestRead = true;
+        }
+        return manifest;
+    }
+
+    /**
+     * Opens a stream over the contents of the named entry. Contents are read once per
+     * retention period and served from memory afterwards.
+     *
+     * @param name the entry name (e.g. {@code plugin.yml})
+     * @return a stream over the entry's contents, or {@code null} if there is no such entry
+     * @throws IOException if the entry cannot be read
+     */
+    public InputStream getInputStream(String name) throws IOException {
+        byte[] content = readEntry(name);
+        return content != null ? new ByteArrayInputStream(content) : null;
+    }
+
+    private byte[] readEntry(String name) throws IOException {
+        byte[] cached = contentCache.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        synchronized (this) {
+            cached = contentCache.get(name);
+            if (cached != null) {
+                return cached;
+            }
+            if (entryNames != null && !entryNames.contains(name)) {
+                return null;
+            }
+            MappedZipFile zip = acquire();
+            try {
+                // Remember the names of a released archive so later misses need no I/O at all.
+                if (references == 0 && entryNames == null) {
+                    entryNames = zip.getEntryNames();
+                }
+                MappedZipFile.Entry entry = zip.getEntry(name);
+                if (entry == null) {
+                    return null;
+                }
+                byte[] content = zip.readAllBytes(entry);
+                if (references > 0) {
+                    contentCache.put(name, content);
+                }
+                return content;
+            } finally {
+                releaseTransient();
+            }
+        }
+    }
+
+    /**
+     * Returns the reader over the mapped JAR, mapping it now if no reference currently keeps it
+     * open. A retained archive hands out the mapping its own reads use, so owners that need
+     * direct entry access (such as the class loader) share it instead of mapping the file again.
+     * The returned reader stays valid after the archive is released: the mapping is dropped only
+     * once no one references the reader any more.
+     *
+     * @return the ZIP reader over this archive
+     * @throws IOException if the file cannot be mapped or is not a valid ZIP file
+     */
+    public synchronized MappedZipFile getZipFile() throws IOException {
+        MappedZipFile zip = acquire();
+        releaseTransient();
+        return zip;
+    }
+
+    /**
+     * Adds a reference, keeping the JAR open and cached contents alive until a matching
+     * {@link #release()}. Typically used as {@code try (PluginArchive a = new PluginArchive(path).retain())}.
+     *
+     * @return this archive
+     */
+    public synchronized PluginArchive retain() {
+        references++;
+        return this;
+    }
+
+    /**
+     * Drops a reference. When the last reference is released the file mapping is dropped and
+     * cached entry contents are discarded; cached names and the manifest are kept. Releasing an
+     * archive with no references has no effect.
+     */
+    public synchronized void release() {
+        if (references == 0) {
+            return;
+        }
+        if (--references == 0) {
+            contentCache.clear();
+            zipFile = null;
+        }
+    }
+
+    /** Same as {@link #release()}, so an archive can be used in try-with-resources. */
+    @Override
+    public void close() {
+        release();
+    }
+
+    private MappedZipFile acquire() throws IOException {
+        if (zipFile == null) {
+            zipFile = MappedZipFile.open(path);
+        }
+        return zipFile;
+    }
+
+    private void releaseTransient() {
+        if (references == 0) {
+            zipFile = null;
+        }
+    }
+}
@@ -6,114 +6,320 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
- * {@link PluginConfig} backed by an XML document (W3C DOM).
+ * {@link PluginConfig} backed by an XML document.
  * <p>
- * Keys use dot notation to navigate nested elements (e.g. {@code section.key}). Elements
- * are created on {@link #set(String, Object)} if missing. Created by
+ * Keys use dot notation to navigate nested elements (e.g. {@code section.key}); when several
+ * sibling elements share a name, the first one is used. Elements are created on
+ * {@link #set(String, Object)} if missing. Created by
  * {@link dev.siea.jonion.configuration.finder.XmlConfigurationFinder}.
  * </p>
+ * <p>
+ * The document is not kept as a DOM tree. It is read with a streaming StAX parser into a
+ * flat, pre-order list of elements (name, depth, attributes and own text) and comments,
+ * plus a map from each key to its element, so lookups are a single hash probe and a large
+ * file costs little more than its text. Mixed content is normalized on {@link #save()}:
+ * an element's own text is written before its children, and comments outside the root
+ * element are dropped.
+ * </p>
  *
  * @see PluginConfig
  * @see dev.siea.jonion.configuration.finder.XmlConfigurationFinder
  */
 public class XmlPluginConfig extends PluginConfig {
     private static final String ROOT_TAG = "config";
+    private static final String INDENT = "  ";
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
 
-    private final Document document;
+    private final List<XmlNode> nodes;
+    private final Map<String, Integer> index = new HashMap<>();
     private final File file;
 
     /**
-     * Creates a config wrapping the given document and optional file path for save.
+     * Creates a config from the given document and optional file path for save. The document
+     * is copied; later changes to it are not reflected in this config.
      *
      * @param document the DOM document (root element typically named {@code config})
      * @param filePath path where the config will be saved, or null for in-memory only (save no-op)
      */
     public XmlPluginConfig(Document document, Path filePath) {
-        this.document = document;
+        this(flatten(document), filePath);
+    }
+
+    /**
+     * Creates an empty config with a {@code config} root element.
+     *
+     * @param filePath path where the config will be saved, or null for in-memory only (save no-op)
+     */
+    public XmlPluginConfig(Path filePath) {
+        this(new ArrayList<>(List.of(new XmlNode(ROOT_TAG, 0, null, null))), filePath);
+    }
+
+    private XmlPluginConfig(List<XmlNode> nodes, Path filePath) {
+        this.nodes = nodes;
         this.file = filePath != null ? new File(filePath.toString()) : null;
+        rebuildIndex();
+    }
+
+    /**
+     * Reads a config from the given XML stream.
+     *
+     * @param inputStream the XML content
+     * @param filePath    path where the config will be saved, or null for in-memory only (save no-op)
+     * @return the parsed config
+     * @throws XMLStreamException if the content is not well-formed XML
+     */
+    public static XmlPluginConfig load(InputStream inputStream, Path filePath) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+        try {
+            return new XmlPluginConfig(parse(reader), filePath);
+        } finally {
+            reader.close();
+        }
     }
 
-    /** Returns the underlying DOM document for advanced use. */
+    /**
+     * Returns a DOM copy of this config for advanced use. Changes to the returned document are
+     * not reflected in this config.
+     *
+     * @return a new document with the config's current content
+     * @throws IllegalStateException if no DOM implementation is available
+     */
     public Document getDocument() {
+        Document document;
+        try {
+            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+        Deque<Node> parents = new ArrayDeque<>();
+        parents.push(document);
+        for (XmlNode node : nodes) {
+            while (parents.size() > node.depth + 1) {
+                parents.pop();
+            }
+            if (node.isComment()) {
+                parents.peek().appendChild(document.createComment(node.text));
+                continue;
+            }
+            Element element = document.createElement(node.name);
+            if (node.attributes != null) {
+                for (int i = 0; i < node.attributes.length; i += 2) {
+                    element.setAttribute(node.attributes[i], node.attributes[i + 1]);
+                }
+            }
+            if (node.text != null) {
+                element.appendChild(document.createTextNode(node.text));
+            }
+            parents.peek().appendChild(element);
+            parents.push(element);
+        }
         return document;
     }
 
-    private Element getOrCreateElement(String path) {
-        String[] parts = path.split("\\.");
-        Element current = document.getDocumentElement();
-        if (current == null) {
-            current = document.createElement(ROOT_TAG);
-            document.appendChild(current);
-        }
-        for (String part : parts) {
-            NodeList children = current.getChildNodes();
-            Element child = null;
-            for (int i = 0; i < children.getLength(); i++) {
-                Node node = children.item(i);
-                if (node instanceof Element && part.equals(((Element) node).getTagName())) {
-                    child = (Element) node;
-                    break;
+    private static List<XmlNode> parse(XMLStreamReader reader) throws XMLStreamException {
+        List<XmlNode> nodes = new ArrayList<>();
+        Deque<Integer> open = new ArrayDeque<>();
+        Deque<StringBuilder> texts = new ArrayDeque<>();
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    String[] attributes = null;
+                    int count = reader.getAttributeCount();
+                    if (count > 0) {
+                        attributes = new String[count * 2];
+                        for (int i = 0; i < count; i++) {
+                            attributes[i * 2] = qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+                            attributes[i * 2 + 1] = reader.getAttributeValue(i);
+                        }
+                    }
+                    open.push(nodes.size());
+                    texts.push(new StringBuilder());
+                    nodes.add(new XmlNode(qualifiedName(reader.getPrefix(), reader.getLocalName()), open.size() - 1, attributes, null));
+                }
+                case XMLStreamConstants.END_ELEMENT -> {
+                    int position = open.pop();
+                    String text = texts.pop().toString();
+                    boolean leaf = position == nodes.size() - 1;
+                    // Indentation between child elements carries no value; keep only meaningful text.
+                    nodes.get(position).text = leaf || !text.isBlank() ? text : null;
+                }
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> {
+                    if (!texts.isEmpty()) {
+                        texts.peek().append(reader.getText());
+                    }
+                }
+                case XMLStreamConstants.COMMENT -> {
+                    if (!open.isEmpty()) {
+                        nodes.add(new XmlNode(null, open.size(), null, reader.getText()));
+                    }
+                }
+                default -> {
                 }
             }
-            if (child == null) {
-                child = document.createElement(part);
-                current.appendChild(child);
-            }
-            current = child;
         }
-        return current;
+        return nodes;
     }
 
-    private Element getElement(String path) {
-        String[] parts = path.split("\\.");
-        Element current = document.getDocumentElement();
-        if (current == null) {
-            return null;
+    private static List<XmlNode> flatten(Document document) {
+        List<XmlNode> nodes = new ArrayList<>();
+        Element root = document.getDocumentElement();
+        if (root != null) {
+            flatten(root, 0, nodes);
+        }
+        return nodes;
+    }
+
+    private static void flatten(Element element, int depth, List<XmlNode> nodes) {
+        String[] attributes = null;
+        int count = element.getAttributes().getLength();
+        if (count > 0) {
+            attributes = new String[count * 2];
+            for (int i = 0; i < count; i++) {
+                Node attribute = element.getAttributes().item(i);
+                attributes[i * 2] = attribute.getNodeName();
+                attributes[i * 2 + 1] = attribute.getNodeValue();
+            }
+        }
+        XmlNode node = new XmlNode(element.getTagName(), depth, attributes, null);
+        int position = nodes.size();
+        nodes.add(node);
+        StringBuilder text = new StringBuilder();
+        NodeList children = element.getChildNodes();
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+            switch (child.getNodeType()) {
+                case Node.ELEMENT_NODE -> flatten((Element) child, depth + 1, nodes);
+                case Node.TEXT_NODE, Node.CDATA_SECTION_NODE -> text.append(child.getNodeValue());
+                case Node.COMMENT_NODE -> nodes.add(new XmlNode(null, depth + 1, null, child.getNodeValue()));
+                default -> {
+                }
+            }
         }
-        for (String part : parts) {
-            NodeList children = current.getChildNodes();
-            Element found = null;
-            for (int i = 0; i < children.getLength(); i++) {
-                Node node = children.item(i);
-                if (node instanceof Element && part.equals(((Element) node).getTagName())) {
-                    found = (Element) node;
-                    break;
+        boolean leaf = position == nodes.size() - 1;
+        node.text = leaf || !text.toString().isBlank() ? text.toString() : null;
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    /**
+     * Maps every key to its element. Only the first sibling with a given name is reachable,
+     * and so is nothing beneath later siblings or beneath elements whose name contains a dot.
+     */
+    private void rebuildIndex() {
+        index.clear();
+        List<String> prefixes = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            XmlNode node = nodes.get(i);
+            if (node.isComment()) {
+                continue;
+            }
+            String key = null;
+            if (node.depth == 0) {
+                key = "";
+            } else {
+                String parentKey = prefixes.get(node.depth - 1);
+                if (parentKey != null && node.name.indexOf('.') < 0) {
+                    key = parentKey.isEmpty() ? node.name : parentKey + "." + node.name;
+                    if (index.putIfAbsent(key, i) != null) {
+                        key = null;
+                    }
                 }
             }
-            current = found;
-            if (current == null) {
-                return null;
+            if (prefixes.size() > node.depth) {
+                prefixes.set(node.depth, key);
+            } else {
+                prefixes.add(key);
+            }
+        }
+    }
+
+    /** Returns the position after the last descendant of the node at the given position. */
+    private int subtreeEnd(int position) {
+        int depth = nodes.get(position).depth;
+        int end = position + 1;
+        while (end < nodes.size() && nodes.get(end).depth > depth) {
+            end++;
+        }
+        return end;
+    }
+
+    private int getOrCreateElement(String path) {
+        if (nodes.isEmpty()) {
+            nodes.add(new XmlNode(ROOT_TAG, 0, null, null));
+        }
+        Integer existing = index.get(path);
+        if (existing != null) {
+            return existing;
+        }
+        int current = 0;
+        String key = "";
+        for (String part : path.split("\\.")) {
+            key = key.isEmpty() ? part : key + "." + part;
+            Integer child = index.get(key);
+            if (child == null) {
+                int position = subtreeEnd(current);
+                nodes.add(position, new XmlNode(part, nodes.get(current).depth + 1, null, null));
+                rebuildIndex();
+                child = position;
             }
+            current = child;
         }
         return current;
     }
 
-    private String getTextContent(Element element) {
-        if (element == null) {
+    private String getTextContent(String path) {
+        Integer position = index.get(path);
+        if (position == null) {
             return null;
         }
-        String text = element.getTextContent();
-        return text != null ? text.trim() : null;
+        int end = subtreeEnd(position);
+        if (end == position + 1) {
+            String text = nodes.get(position).text;
+            return text != null ? text.trim() : "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = position; i < end; i++) {
+            XmlNode node = nodes.get(i);
+            if (!node.isComment() && node.text != null) {
+                text.append(node.text);
+            }
+        }
+        return text.toString().trim();
     }
 
     @Override
     public boolean containsKey(String path) {
-        return getElement(path) != null;
+        return index.containsKey(path);
     }
 
     @Override
     public String getString(String path) {
-        Element element = getElement(path);
-        return getTextContent(element);
+        return getTextContent(path);
     }
 
     @Override
@@ -195,8 +401,13 @@ public class XmlPluginConfig extends PluginConfig {
 
     @Override
     public void set(String path, Object value) {
-        Element element = getOrCreateElement(path);
-        element.setTextContent(value != null ? value.toString() : "");
+        int position = getOrCreateElement(path);
+        int end = subtreeEnd(position);
+        if (end > position + 1) {
+            nodes.subList(position + 1, end).clear();
+            rebuildIndex();
+        }
+        nodes.get(position).text = value != null ? value.toString() : "";
     }
 
     @Override
@@ -208,16 +419,94 @@ public class XmlPluginConfig extends PluginConfig {
             if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
                 throw new ConfigSaveException("Failed to create directories for the configuration file.");
             }
-            if (!file.exists() && !file.createNewFile()) {
-                throw new ConfigSaveException("Failed to create the configuration file.");
+            try (OutputStream outputStream = Files.newOutputStream(file.toPath())) {
+                XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(outputStream, "UTF-8");
+                write(writer);
+                writer.close();
             }
-            TransformerFactory factory = TransformerFactory.newInstance();
-            Transformer transformer = factory.newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-            transformer.transform(new DOMSource(document), new StreamResult(file));
-        } catch (Exception e) {
+        } catch (IOException | XMLStreamException e) {
             throw new ConfigSaveException(e);
         }
     }
+
+    private void write(XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartDocument("UTF-8", "1.0");
+        int open = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            XmlNode node = nodes.get(i);
+            for (; open > node.depth; open--) {
+                writeIndent(writer, open - 1);
+                writer.writeEndElement();
+            }
+            writeIndent(writer, node.depth);
+            if (node.isComment()) {
+                writer.writeComment(node.text);
+                continue;
+            }
+            boolean leaf = i + 1 == nodes.size() || nodes.get(i + 1).depth <= node.depth;
+            boolean empty = node.text == null || node.text.isEmpty();
+            if (leaf && empty) {
+                writer.writeEmptyElement(node.name);
+            } else {
+                writer.writeStartElement(node.name);
+            }
+            if (node.attributes != null) {
+                for (int a = 0; a < node.attributes.length; a += 2) {
+                    writer.writeAttribute(node.attributes[a], node.attributes[a + 1]);
+                }
+            }
+            if (leaf) {
+                if (!empty) {
+                    writer.writeCharacters(node.text);
+                    writer.writeEndElement();
+                }
+            } else {
+                if (!empty) {
+                    writeIndent(writer, node.depth + 1);
+                    writer.writeCharacters(node.text.trim());
+                }
+                open = node.depth + 1;
+            }
+        }
+        for (; open > 0; open--) {
+            writeIndent(writer, open - 1);
+            writer.writeEndElement();
+        }
+        writer.writeCharacters("\n");
+        writer.writeEndDocument();
+    }
+
+    private static void writeIndent(XMLStreamWriter writer, int depth) throws XMLStreamException {
+        writer.writeCharacters("\n" + INDENT.repeat(depth));
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /** One element or comment of the flattened document. */
+    private static final class XmlNode {
+        /** The element name, or null for a comment. */
+        final String name;
+        final int depth;
+        /** Attribute names and values, alternating, or null if there are none. */
+        final String[] attributes;
+        /** The element's own text (or the comment text); null for a section without text. */
+        String text;
+
+        XmlNode(String name, int depth, String[] attributes, String text) {
+            this.name = name;
+            this.depth = depth;
+            this.attributes = attributes;
+            this.text = text;
+        }
+
+        boolean isComment() {
+            return name == null;
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package dev.siea.jonion.configuration.finder;
 
+import dev.siea.jonion.archive.PluginArchive;
 import dev.siea.jonion.configuration.PluginConfig;
 
 import java.nio.file.Path;
@@ -36,4 +37,31 @@ public interface PluginConfigurationFinder {
      * @return the loaded config, or null if not found or load fails
      */
     PluginConfig findPluginConfiguration(String pluginId, Path path, String configFileName);
+
+    /**
+     * Finds the default configuration for the plugin, reading bundled defaults through the
+     * shared plugin archive instead of reopening the JAR. The default implementation falls
+     * back to {@link #findPluginConfiguration(String, Path)}.
+     *
+     * @param pluginId the plugin identifier (used for path resolution)
+     * @param archive  the shared handle to the plugin JAR
+     * @return the loaded config, or null if not found or load fails
+     */
+    default PluginConfig findPluginConfiguration(String pluginId, PluginArchive archive) {
+        return findPluginConfiguration(pluginId, archive.getPath());
+    }
+
+    /**
+     * Finds a named configuration file for the plugin, reading bundled defaults through the
+     * shared plugin archive instead of reopening the JAR. The default implementation falls
+     * back to {@link #findPluginConfiguration(String, Path, String)}.
+     *
+     * @param pluginId       the plugin identifier (used for path resolution)
+     * @param archive        the shared handle to the plugin JAR
+     * @param configFileName the config file name (e.g. {@code config.yml}, {@code messages.yml})
+     * @return the loaded config, or null if not found or load fails
+     */
+    default PluginConfig findPluginConfiguration(String pluginId, PluginArchive archive, String configFileName) {
+        return findPluginConfiguration(pluginId, archive.getPath(), configFileName);
+    }
 }
@@ -1,25 +1,22 @@
 package dev.siea.jonion.configuration.finder;
 
+import dev.siea.jonion.archive.PluginArchive;
 import dev.siea.jonion.configuration.XmlPluginConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 /**
  * Finds and loads plugin configuration from XML files.
  * <p>
  * Resolves config under {@code <parent of path>/<pluginId>/<configFileName>} on the filesystem,
  * or from the root of the JAR at {@code path} if the file is not on disk. Default file name
- * is {@code config.xml}. Returns an {@link XmlPluginConfig} backed by a W3C DOM document.
+ * is {@code config.xml}. Returns an {@link XmlPluginConfig} read with a streaming parser.
  * </p>
  *
  * @see PluginConfigurationFinder
@@ -50,60 +47,36 @@ public class XmlConfigurationFinder implements PluginConfigurationFinder {
 
     @Override
     public XmlPluginConfig findPluginConfiguration(String pluginId, Path path, String configFileName) {
-        Path filePath = path.getParent().resolve(pluginId + "/" + configFileName);
+        try (PluginArchive archive = new PluginArchive(path).retain()) {
+            return findPluginConfiguration(pluginId, archive, configFileName);
+        }
+    }
 
-        Document document;
+    @Override
+    public XmlPluginConfig findPluginConfiguration(String pluginId, PluginArchive archive) {
+        return findPluginConfiguration(pluginId, archive, configFileName);
+    }
+
+    @Override
+    public XmlPluginConfig findPluginConfiguration(String pluginId, PluginArchive archive, String configFileName) {
+        Path path = archive.getPath();
+        Path filePath = path.getParent().resolve(pluginId + "/" + configFileName);
 
         if (Files.exists(filePath)) {
             try (InputStream inputStream = Files.newInputStream(filePath)) {
-                document = loadDocument(inputStream);
-            } catch (IOException e) {
+                return XmlPluginConfig.load(inputStream, filePath);
+            } catch (IOException | XMLStreamException e) {
                 log.debug("Could not load config from {}: {}", filePath, e.getMessage(), e);
                 return null;
             }
-        } else {
-            try (JarFile jarFile = new JarFile(path.toFile())) {
-                JarEntry entry = jarFile.getJarEntry(configFileName);
-                if (entry != null) {
-                    try (InputStream inputStream = jarFile.getInputStream(entry)) {
-                        document = loadDocument(inputStream);
-                    }
-                } else {
-                    document = createEmptyDocument();
-                }
-            } catch (IOException e) {
-                log.debug("Could not load config from JAR {}: {}", path, e.getMessage(), e);
-                return null;
-            }
         }
-
-        if (document == null) {
-            return null;
-        }
-
-        return new XmlPluginConfig(document, filePath);
-    }
-
-    private Document loadDocument(InputStream inputStream) {
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            return builder.parse(inputStream);
-        } catch (Exception e) {
-            log.debug("Could not parse XML config: {}", e.getMessage(), e);
-            return null;
-        }
-    }
-
-    private Document createEmptyDocument() {
-        try {
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.newDocument();
-            document.appendChild(document.createElement("config"));
-            return document;
-        } catch (Exception e) {
-            log.debug("Could not create empty XML document: {}", e.getMessage(), e);
+        try (InputStream inputStream = archive.getInputStream(configFileName)) {
+            if (inputStream == null) {
+                return new XmlPluginConfig(filePath);
+            }
+            return XmlPluginConfig.load(inputStream, filePath);
+        } catch (IOException | XMLStreamException e) {
+            log.debug("Could not load config from JAR {}: {}", path, e.getMessage(), e);
             return null;
         }
     }
@@ -1,5 +1,6 @@
 package dev.siea.jonion.configuration.finder;
 
+import dev.siea.jonion.archive.PluginArchive;
 import dev.siea.jonion.configuration.YamlPluginConfig;
 import org.simpleyaml.configuration.file.YamlConfiguration;
 import org.slf4j.Logger;
@@ -9,8 +10,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 /**
  * Finds and loads plugin configuration from YAML files.
@@ -48,6 +47,19 @@ public class YamlConfigurationFinder implements PluginConfigurationFinder {
 
     @Override
     public YamlPluginConfig findPluginConfiguration(String pluginId, Path path, String configFileName) {
+        try (PluginArchive archive = new PluginArchive(path).retain()) {
+            return findPluginConfiguration(pluginId, archive, configFileName);
+        }
+    }
+
+    @Override
+    public YamlPluginConfig findPluginConfiguration(String pluginId, PluginArchive archive) {
+        return findPluginConfiguration(pluginId, archive, configFileName);
+    }
+
+    @Override
+    public YamlPluginConfig findPluginConfiguration(String pluginId, PluginArchive archive, String configFileName) {
+        Path path = archive.getPath();
         Path filePath = path.getParent().resolve(pluginId + "/" + configFileName);
 
         YamlConfiguration yamlConfig = new YamlConfiguration();
@@ -60,12 +72,9 @@ public class YamlConfigurationFinder implements PluginConfigurationFinder {
                 return null;
             }
         } else {
-            try (JarFile jarFile = new JarFile(path.toFile())) {
-                JarEntry entry = jarFile.getJarEntry(configFileName);
-                if (entry != null) {
-                    try (InputStream inputStream = jarFile.getInputStream(entry)) {
-                        yamlConfig.load(inputStream);
-                    }
+            try (InputStream inputStream = archive.getInputStream(configFileName)) {
+                if (inputStream != null) {
+                    yamlConfig.load(inputStream);
                 } else {
                     yamlConfig.loadFromString("");
                 }
@@ -0,0 +1,429 @@
+package dev.siea.jonion.dependency;
+
+import dev.siea.jonion.descriptor.PluginDescriptor;
+import dev.siea.jonion.exceptions.CircularDependencyException;
+import dev.siea.jonion.exceptions.DependencyException;
+import dev.siea.jonion.exceptions.MissingDependencyException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable dependency graph of a set of plugins, resolved into a load order.
+ * <p>
+ * The graph has an edge from each plugin to every dependency that is present, required or
+ * optional. Resolution runs in {@code O(V + E)} without recursion:
+ * </p>
+ * <ol>
+ *     <li>Plugins missing a required dependency fail with a {@link MissingDependencyException},
+ *     and so do the plugins that require them.</li>
+ *     <li>The remaining plugins are ordered with Kahn's algorithm, dependencies first; plugins
+ *     without a mutual ordering keep their registration order as far as the graph allows.</li>
+ *     <li>Plugins left over are on, or depend on, a cycle. They fail with a
+ *     {@link CircularDependencyException} whose message shows the full cycle path
+ *     (e.g. {@code a -> b -> c -> a}).</li>
+ * </ol>
+ * <p>
+ * An optional dependency that fails does not fail its dependents; it only orders them when it
+ * loads. The graph also keeps a reverse index, so the direct dependents of a plugin are a
+ * single lookup, and caches the transitive dependents of each plugin as a {@link BitSet}
+ * once they have been asked for. Instances are safe for concurrent use.
+ * </p>
+ *
+ * @see PluginDependency
+ * @see dev.siea.jonion.manager.AbstractPluginManager#getDependencyGraph()
+ */
+public final class DependencyGraph {
+    /** Placeholder for plugins Kahn's algorithm could not order, until their cycle is known. */
+    private static final DependencyException UNRESOLVED = new DependencyException("unresolved");
+
+    private final String[] ids;
+    private final Map<String, Integer> indexById;
+    private final int[][] dependencies;
+    private final int[][] dependents;
+    private final List<String> loadOrder;
+    private final Map<String, DependencyException> failures;
+    private final List<Set<String>> dependencyViews;
+    private final List<Set<String>> dependentViews;
+    private final BitSet[] transitiveDependents;
+    private final List<Set<String>> transitiveDependentViews;
+
+    /**
+     * Builds and resolves the graph of the given plugins. If several descriptors share an ID,
+     * only the first one is part of the graph.
+     *
+     * @param descriptors the plugins, in registration order
+     */
+    public DependencyGraph(Collection<? extends PluginDescriptor> descriptors) {
+        List<PluginDescriptor> nodes = new ArrayList<>(descriptors.size());
+        indexById = new HashMap<>();
+        for (PluginDescriptor descriptor : descriptors) {
+            if (indexById.putIfAbsent(descriptor.getPluginId(), nodes.size()) == null) {
+                nodes.add(descriptor);
+            }
+        }
+        int size = nodes.size();
+        ids = new String[size];
+        dependencies = new int[size][];
+        int[] dependentCounts = new int[size];
+        Map<Integer, String> missing = new LinkedHashMap<>();
+        int edgeOffset = 0;
+        int[] requiredEdges = new int[16];
+        int[] requiredOffsets = new int[size + 1];
+        for (int node = 0; node < size; node++) {
+            PluginDescriptor descriptor = nodes.get(node);
+            ids[node] = descriptor.getPluginId();
+            List<PluginDependency> declared = descriptor.getDependencies();
+            int[] present = new int[declared.size()];
+            int count = 0;
+            requiredOffsets[node] = edgeOffset;
+            for (PluginDependency dependency : declared) {
+                Integer target = indexById.get(dependency.getPluginId());
+                if (target == null) {
+                    if (!dependency.isOptional()) {
+                        missing.putIfAbsent(node, dependency.getPluginId());
+                    }
+                    continue;
+                }
+                present[count++] = target;
+                dependentCounts[target]++;
+                if (!dependency.isOptional()) {
+                    if (edgeOffset == requiredEdges.length) {
+                        requiredEdges = Arrays.copyOf(requiredEdges, edgeOffset * 2);
+                    }
+                    requiredEdges[edgeOffset++] = target;
+                }
+            }
+            dependencies[node] = count == present.length ? present : Arrays.copyOf(present, count);
+        }
+        requiredOffsets[size] = edgeOffset;
+
+        dependents = new int[size][];
+        for (int node = 0; node < size; node++) {
+            dependents[node] = new int[dependentCounts[node]];
+        }
+        int[] fill = new int[size];
+        for (int node = 0; node < size; node++) {
+            for (int target : dependencies[node]) {
+                dependents[target][fill[target]++] = node;
+            }
+        }
+
+        DependencyException[] failed = new DependencyException[size];
+        String[] reasons = new String[size];
+        failMissing(missing, failed, reasons, requiredEdges, requiredOffsets);
+        loadOrder = Collections.unmodifiableList(sort(failed));
+        failCycles(failed, reasons);
+
+        Map<String, DependencyException> failureMap = new LinkedHashMap<>();
+        for (int node = 0; node < size; node++) {
+            if (failed[node] != null) {
+                failureMap.put(ids[node], failed[node]);
+            }
+        }
+        failures = Collections.unmodifiableMap(failureMap);
+
+        dependencyViews = new ArrayList<>(size);
+        dependentViews = new ArrayList<>(size);
+        for (int node = 0; node < size; node++) {
+            dependencyViews.add(toSet(dependencies[node]));
+            dependentViews.add(toSet(dependents[node]));
+        }
+        transitiveDependents = new BitSet[size];
+        transitiveDependentViews = new ArrayList<>(Collections.nCopies(size, null));
+    }
+
+    /**
+     * Fails plugins with a missing required dependency and, breadth-first over the reverse
+     * index, every plugin that requires a failed plugin. Messages name only the root cause, so
+     * they stay short on long chains.
+     */
+    private void failMissing(Map<Integer, String> missing, DependencyException[] failed, String[] reasons, int[] requiredEdges, int[] requiredOffsets) {
+        Deque<Integer> queue = new ArrayDeque<>();
+        missing.forEach((node, dependencyId) -> {
+            reasons[node] = ids[node] + " is missing required dependency " + dependencyId;
+            failed[node] = new MissingDependencyException("Missing required dependency: " + dependencyId + " (required by " + ids[node] + ")");
+            queue.add(node);
+        });
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int dependent : dependents[node]) {
+                if (failed[dependent] == null && requires(dependent, node, requiredEdges, requiredOffsets)) {
+                    reasons[dependent] = reasons[node];
+                    failed[dependent] = new MissingDependencyException("Plugin " + ids[dependent] + " requires " + ids[node]
+                            + ", which cannot be loaded: " + reasons[node]);
+                    queue.add(dependent);
+                }
+            }
+        }
+    }
+
+    private static boolean requires(int node, int target, int[] requiredEdges, int[] requiredOffsets) {
+        for (int i = requiredOffsets[node]; i < requiredOffsets[node + 1]; i++) {
+            if (requiredEdges[i] == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Kahn's algorithm over the plugins that have not failed. */
+    private List<String> sort(DependencyException[] failed) {
+        int size = ids.length;
+        int[] pending = new int[size];
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int node = 0; node < size; node++) {
+            if (failed[node] != null) {
+                continue;
+            }
+            for (int target : dependencies[node]) {
+                if (failed[target] == null) {
+                    pending[node]++;
+                }
+            }
+            if (pending[node] == 0) {
+                ready.add(node);
+            }
+        }
+        List<String> order = new ArrayList<>(size);
+        while (!ready.isEmpty()) {
+            int node = ready.poll();
+            order.add(ids[node]);
+            pending[node] = -1;
+            for (int dependent : dependents[node]) {
+                if (failed[dependent] == null && --pending[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        for (int node = 0; node < size; node++) {
+            if (failed[node] == null && pending[node] > 0) {
+                failed[node] = UNRESOLVED;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Explains every plugin Kahn's algorithm could not order. Each unresolved plugin has an
+     * unresolved dependency, so following them from any such plugin reaches either a plugin
+     * already explained or a node already on the walk, which closes a cycle. Every plugin is
+     * walked once.
+     */
+    private void failCycles(DependencyException[] failed, String[] reasons) {
+        int[] positionOnWalk = new int[ids.length];
+        Arrays.fill(positionOnWalk, -1);
+        for (int start = 0; start < ids.length; start++) {
+            if (failed[start] != UNRESOLVED) {
+                continue;
+            }
+            List<Integer> walk = new ArrayList<>();
+            int node = start;
+            while (true) {
+                positionOnWalk[node] = walk.size();
+                walk.add(node);
+                int next = -1;
+                for (int target : dependencies[node]) {
+                    if (failed[target] == UNRESOLVED || positionOnWalk[target] >= 0) {
+                        next = target;
+                        break;
+                    }
+                    if (next < 0 && failed[target] instanceof CircularDependencyException) {
+                        next = target;
+                    }
+                }
+                if (positionOnWalk[next] >= 0) {
+                    // The walk closed a cycle: walk[cycleStart..] are its members.
+                    int cycleStart = positionOnWalk[next];
+                    StringBuilder path = new StringBuilder();
+                    for (int i = cycleStart; i < walk.size(); i++) {
+                        path.append(ids[walk.get(i)]).append(" -> ");
+                    }
+                    path.append(ids[next]);
+                    String reason = "circular dependency " + path;
+                    CircularDependencyException cycle = new CircularDependencyException("Circular dependency detected: " + path);
+                    for (int i = cycleStart; i < walk.size(); i++) {
+                        failed[walk.get(i)] = cycle;
+                        reasons[walk.get(i)] = reason;
+                    }
+                    explainUpstream(walk, cycleStart, failed, reasons);
+                    break;
+                }
+                if (failed[next] != UNRESOLVED) {
+                    // Reached a plugin that is already explained.
+                    explainUpstream(walk, walk.size(), failed, reasons);
+                    break;
+                }
+                node = next;
+            }
+            walk.forEach(walked -> positionOnWalk[walked] = -1);
+        }
+    }
+
+    /** Fails walk[0..end) from last to first, each because of the plugin after it. */
+    private void explainUpstream(List<Integer> walk, int end, DependencyException[] failed, String[] reasons) {
+        for (int i = end - 1; i >= 0; i--) {
+            int node = walk.get(i);
+            int cause = i + 1 < walk.size() ? walk.get(i + 1) : -1;
+            if (cause < 0 || failed[cause] == UNRESOLVED) {
+                for (int target : dependencies[node]) {
+                    if (failed[target] instanceof CircularDependencyException) {
+                        cause = target;
+                        break;
+                    }
+                }
+            }
+            reasons[node] = reasons[cause];
+            failed[node] = new CircularDependencyException("Plugin " + ids[node] + " depends on " + ids[cause]
+                    + ", which cannot be loaded: " + reasons[cause]);
+        }
+    }
+
+    /** Returns the IDs of all plugins that can be loaded, dependencies before their dependents. */
+    public List<String> getLoadOrder() {
+        return loadOrder;
+    }
+
+    /**
+     * Returns the plugins that cannot be loaded, by ID in registration order, with the reason:
+     * a {@link MissingDependencyException} or a {@link CircularDependencyException}.
+     */
+    public Map<String, DependencyException> getFailures() {
+        return failures;
+    }
+
+    /** Returns whether a plugin with the given ID is part of the graph. */
+    public boolean contains(String pluginId) {
+        return indexById.containsKey(pluginId);
+    }
+
+    /**
+     * Returns the plugins the given plugin directly depends on that are part of the graph.
+     *
+     * @param pluginId the plugin ID
+     * @return an unmodifiable set of plugin IDs; empty if the plugin is unknown
+     */
+    public Set<String> getDependencies(String pluginId) {
+        Integer node = indexById.get(pluginId);
+        return node != null ? dependencyViews.get(node) : Collections.emptySet();
+    }
+
+    /**
+     * Returns the plugins that directly depend on the given plugin (required or optional).
+     *
+     * @param pluginId the plugin ID
+     * @return an unmodifiable set of plugin IDs; empty if the plugin is unknown
+     */
+    public Set<String> getDependents(String pluginId) {
+        Integer node = indexById.get(pluginId);
+        return node != null ? dependentViews.get(node) : Collections.emptySet();
+    }
+
+    /**
+     * Returns every plugin that directly or indirectly depends on the given plugin, not
+     * including the plugin itself. Computed once per plugin and cached.
+     *
+     * @param pluginId the plugin ID
+     * @return an unmodifiable set of plugin IDs in registration order; empty if the plugin is unknown
+     */
+    public Set<String> getTransitiveDependents(String pluginId) {
+        Integer node = indexById.get(pluginId);
+        if (node == null) {
+            return Collections.emptySet();
+        }
+        synchronized (transitiveDependentViews) {
+            Set<String> view = transitiveDependentViews.get(node);
+            if (view == null) {
+                BitSet closure = (BitSet) transitiveDependents(node).clone();
+                closure.clear(node);
+                view = toSet(closure);
+                transitiveDependentViews.set(node, view);
+            }
+            return view;
+        }
+    }
+
+    /**
+     * Returns every plugin that directly or indirectly depends on any of the given plugins,
+     * not including the given plugins themselves.
+     *
+     * @param pluginIds the plugin IDs; unknown IDs are ignored
+     * @return a set of plugin IDs in registration order
+     */
+    public Set<String> getTransitiveDependents(Collection<String> pluginIds) {
+        BitSet union = new BitSet(ids.length);
+        BitSet roots = new BitSet(ids.length);
+        synchronized (transitiveDependentViews) {
+            for (String pluginId : pluginIds) {
+                Integer node = indexById.get(pluginId);
+                if (node != null) {
+                    union.or(transitiveDependents(node));
+                    roots.set(node);
+                }
+            }
+        }
+        union.andNot(roots);
+        return toSet(union);
+    }
+
+    /** Returns the cached closure of the node's dependents, including the node itself when on a cycle. */
+    private BitSet transitiveDependents(int node) {
+        BitSet closure = transitiveDependents[node];
+        if (closure == null) {
+            closure = new BitSet(ids.length);
+            Deque<Integer> queue = new ArrayDeque<>();
+            queue.add(node);
+            while (!queue.isEmpty()) {
+                int current = queue.poll();
+                for (int dependent : dependents[current]) {
+                    if (!closure.get(dependent)) {
+                        closure.set(dependent);
+                        BitSet known = transitiveDependents[dependent];
+                        if (known != null) {
+                            closure.or(known);
+                        } else {
+                            queue.add(dependent);
+                        }
+                    }
+                }
+            }
+            transitiveDependents[node] = closure;
+        }
+        return closure;
+    }
+
+    private Set<String> toSet(int[] nodes) {
+        if (nodes.length == 0) {
+            return Collections.emptySet();
+        }
+        int[] sorted = nodes.clone();
+        Arrays.sort(sorted);
+        Set<String> result = new LinkedHashSet<>();
+        for (int node : sorted) {
+            result.add(ids[node]);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    private Set<String> toSet(BitSet nodes) {
+        if (nodes.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+            result.add(ids[node]);
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
@@ -1,14 +1,16 @@
 package dev.siea.jonion.descriptor;
 
 import dev.siea.jonion.dependency.PluginDependency;
+import dev.siea.jonion.lifecycle.PluginTier;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Mutable implementation of {@link PluginDescriptor} used by descriptor finders to build
- * metadata from YAML or XML. Dependencies are added via {@link #addDependency(PluginDependency)}
- * after construction.
+ * metadata from YAML or XML. Dependencies and exported packages are added via
+ * {@link #addDependency(PluginDependency)} and {@link #addExportedPackage(String)}, and the tier is
+ * set via {@link #setTier(PluginTier)}, after construction.
  *
  * @see PluginDescriptor
  * @see dev.siea.jonion.descriptor.finder.YamlDescriptorFinder
@@ -22,6 +24,8 @@ public class DefaultPluginDescriptor implements PluginDescriptor {
     private final List<String> authors;
     private final String license;
     private final List<PluginDependency> dependencies;
+    private final List<String> exportedPackages = new ArrayList<>();
+    private PluginTier tier = PluginTier.NORMAL;
 
     /**
      * Creates a new descriptor with the given metadata. Dependencies list is initially empty;
@@ -53,6 +57,24 @@ public class DefaultPluginDescriptor implements PluginDescriptor {
         this.dependencies.add(dependency);
     }
 
+    /**
+     * Appends a package to the list of packages exported to dependent plugins.
+     *
+     * @param packageName the fully qualified package name
+     */
+    public void addExportedPackage(String packageName) {
+        this.exportedPackages.add(packageName);
+    }
+
+    /**
+     * Sets the startup tier of the plugin.
+     *
+     * @param tier the tier; {@code null} resets it to {@link PluginTier#NORMAL}
+     */
+    public void setTier(PluginTier tier) {
+        this.tier = tier != null ? tier : PluginTier.NORMAL;
+    }
+
     @Override
     public String getPluginId() {
         return pluginId;
@@ -87,4 +109,14 @@ public class DefaultPluginDescriptor implements PluginDescriptor {
     public List<PluginDependency> getDependencies() {
         return dependencies;
     }
+
+    @Override
+    public List<String> getExportedPackages() {
+        return exportedPackages;
+    }
+
+    @Override
+    public PluginTier getTier() {
+        return tier;
+    }
 }
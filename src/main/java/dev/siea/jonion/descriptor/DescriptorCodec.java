@@ -0,0 +1,234 @@
+package dev.siea.jonion.descriptor;
+
+import dev.siea.jonion.dependency.PluginDependency;
+import dev.siea.jonion.lifecycle.PluginTier;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compact binary encoding of {@link PluginDescriptor} metadata.
+ * <p>
+ * Strings are written as a length-prefixed UTF-8 byte sequence (length {@code -1} for
+ * {@code null}); lists are written as a count followed by their elements. Decoding works
+ * directly on a {@link ByteBuffer}, so callers can read descriptors straight out of a
+ * memory-mapped file without an intermediate stream. Used by
+ * {@link dev.siea.jonion.descriptor.finder.IndexedDescriptorFinder} to persist parsed
+ * descriptors between runs and by the {@code @JonionPlugin} annotation processor to write the
+ * index read by {@link dev.siea.jonion.descriptor.finder.GeneratedDescriptorFinder}.
+ * </p>
+ * <p>
+ * The encoding is versioned by {@link #FORMAT_VERSION}; containers that persist encoded
+ * descriptors should store it. Data written with an older version down to
+ * {@link #MIN_FORMAT_VERSION} can still be decoded with {@link #read(ByteBuffer, int)}, so
+ * descriptor indexes compiled into existing plugin JARs keep working; fields added since are
+ * given their defaults.
+ * </p>
+ *
+ * @see PluginDescriptor
+ * @see dev.siea.jonion.descriptor.finder.IndexedDescriptorFinder
+ * @see dev.siea.jonion.descriptor.finder.GeneratedDescriptorFinder
+ */
+public final class DescriptorCodec {
+    /** Version of the binary layout written by {@link #write(DataOutput, PluginDescriptor)}. */
+    public static final int FORMAT_VERSION = 3;
+    /** Oldest binary layout that {@link #read(ByteBuffer, int)} still decodes. */
+    public static final int MIN_FORMAT_VERSION = 2;
+    /** First version that encodes the {@link PluginTier}. */
+    private static final int TIER_VERSION = 3;
+
+    private static final int INDEX_MAGIC = 0x4A4E5044; // "JNPD"
+
+    private DescriptorCodec() {
+    }
+
+    /**
+     * Writes the descriptor's metadata to the given output.
+     *
+     * @param out        the destination
+     * @param descriptor the descriptor to encode
+     * @throws IOException if writing fails
+     */
+    public static void write(DataOutput out, PluginDescriptor descriptor) throws IOException {
+        writeString(out, descriptor.getPluginId());
+        writeString(out, descriptor.getDescription());
+        writeString(out, descriptor.getVersion());
+        writeString(out, descriptor.getPluginClass());
+        writeStringList(out, descriptor.getAuthors());
+        writeString(out, descriptor.getLicense());
+
+        List<PluginDependency> dependencies = descriptor.getDependencies();
+        out.writeInt(dependencies.size());
+        for (PluginDependency dependency : dependencies) {
+            writeString(out, dependency.getPluginId());
+            out.writeBoolean(dependency.isOptional());
+        }
+        writeStringList(out, descriptor.getExportedPackages());
+        PluginTier tier = descriptor.getTier();
+        writeString(out, tier != null ? tier.name() : null);
+    }
+
+    /**
+     * Reads a descriptor previously written by {@link #write(DataOutput, PluginDescriptor)}
+     * with the current {@link #FORMAT_VERSION}, advancing the buffer's position past it.
+     *
+     * @param buffer the source, positioned at the start of an encoded descriptor
+     * @return the decoded descriptor
+     * @throws IllegalArgumentException if the buffer does not contain a well-formed descriptor
+     */
+    public static DefaultPluginDescriptor read(ByteBuffer buffer) {
+        return read(buffer, FORMAT_VERSION);
+    }
+
+    /**
+     * Reads a descriptor written with the given format version, advancing the buffer's
+     * position past it. A version 2 descriptor has no tier and is given
+     * {@link PluginTier#NORMAL}.
+     *
+     * @param buffer        the source, positioned at the start of an encoded descriptor
+     * @param formatVersion the format version the descriptor was written with
+     * @return the decoded descriptor
+     * @throws IllegalArgumentException if the version is not supported or the buffer does not
+     *                                  contain a well-formed descriptor
+     */
+    public static DefaultPluginDescriptor read(ByteBuffer buffer, int formatVersion) {
+        if (formatVersion < MIN_FORMAT_VERSION || formatVersion > FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported descriptor format version " + formatVersion
+                    + " (expected " + MIN_FORMAT_VERSION + " to " + FORMAT_VERSION + ")");
+        }
+        try {
+            String pluginId = readString(buffer);
+            String description = readString(buffer);
+            String version = readString(buffer);
+            String pluginClass = readString(buffer);
+            List<String> authors = readStringList(buffer);
+            String license = readString(buffer);
+            DefaultPluginDescriptor descriptor = new DefaultPluginDescriptor(pluginId, description, version, pluginClass, authors, license);
+
+            int dependencyCount = readCount(buffer);
+            for (int i = 0; i < dependencyCount; i++) {
+                String dependencyId = readString(buffer);
+                boolean optional = buffer.get() != 0;
+                descriptor.addDependency(new PluginDependency(dependencyId, optional));
+            }
+            readStringList(buffer).forEach(descriptor::addExportedPackage);
+            if (formatVersion >= TIER_VERSION) {
+                descriptor.setTier(PluginTier.fromName(readString(buffer)));
+            }
+            return descriptor;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated descriptor data", e);
+        }
+    }
+
+    /**
+     * Writes a standalone descriptor index: a magic number and {@link #FORMAT_VERSION} followed
+     * by the encoded descriptor. This is the format of the index generated by the
+     * {@code @JonionPlugin} annotation processor.
+     *
+     * @param out        the destination
+     * @param descriptor the descriptor to encode
+     * @throws IOException if writing fails
+     */
+    public static void writeIndex(DataOutput out, PluginDescriptor descriptor) throws IOException {
+        out.writeInt(INDEX_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        write(out, descriptor);
+    }
+
+    /**
+     * Reads a descriptor index written by {@link #writeIndex(DataOutput, PluginDescriptor)}.
+     *
+     * @param buffer the source, positioned at the start of the index
+     * @return the decoded descriptor
+     * @throws IllegalArgumentException if the buffer is not an index of a supported version
+     */
+    public static DefaultPluginDescriptor readIndex(ByteBuffer buffer) {
+        int version;
+        try {
+            if (buffer.getInt() != INDEX_MAGIC) {
+                throw new IllegalArgumentException("Not a descriptor index");
+            }
+            version = buffer.getInt();
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated descriptor index", e);
+        }
+        // Indexes are compiled into plugin JARs and cannot be rebuilt by the host, so older
+        // layouts must stay readable.
+        return read(buffer, version);
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string ({@code null} is written as length {@code -1}).
+     *
+     * @param out   the destination
+     * @param value the string to write, may be null
+     * @throws IOException if writing fails
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutput, String)}.
+     *
+     * @param buffer the source
+     * @return the decoded string, or null if null was written
+     * @throws IllegalArgumentException if the encoded length is invalid
+     */
+    public static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStringList(DataOutput out, List<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readStringList(ByteBuffer buffer) {
+        int count = readCount(buffer);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(buffer));
+        }
+        return values;
+    }
+
+    private static int readCount(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid element count: " + count);
+        }
+        return count;
+    }
+}
@@ -1,11 +1,13 @@
 package dev.siea.jonion.descriptor;
 
 import dev.siea.jonion.dependency.PluginDependency;
+import dev.siea.jonion.lifecycle.PluginTier;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
- * Metadata for a plugin: identity, version, main class, authors, license, and dependencies.
+ * Metadata for a plugin: identity, version, main class, authors, license, dependencies and startup tier.
  * <p>
  * Descriptors are read from plugin JARs by a {@link dev.siea.jonion.descriptor.finder.PluginDescriptorFinder}
  * (e.g. from {@code plugin.yml} or {@code plugin.xml}) and used by the plugin manager to load and
@@ -37,4 +39,18 @@ public interface PluginDescriptor {
 
     /** Returns the list of plugin dependencies (required and optional). */
     List<PluginDependency> getDependencies();
+
+    /**
+     * Returns the packages this plugin makes available to plugins that depend on it.
+     * An empty list means the descriptor declares no explicit export list, in which case every
+     * package of the plugin JAR is exported.
+     */
+    default List<String> getExportedPackages() {
+        return Collections.emptyList();
+    }
+
+    /** Returns the startup tier of the plugin; {@link PluginTier#NORMAL} unless the descriptor declares one. */
+    default PluginTier getTier() {
+        return PluginTier.NORMAL;
+    }
 }
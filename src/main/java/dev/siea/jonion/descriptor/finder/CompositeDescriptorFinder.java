@@ -0,0 +1,90 @@
+package dev.siea.jonion.descriptor.finder;
+
+import dev.siea.jonion.archive.PluginArchive;
+import dev.siea.jonion.descriptor.PluginDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+
+/**
+ * Descriptor finder for plugin directories that mix descriptor formats.
+ * <p>
+ * Each format is registered under the JAR entry that identifies it. On lookup the JAR's
+ * central directory is read once (through the shared {@link PluginArchive}) and only the
+ * finders whose entry is present are consulted, in registration order, until one returns a
+ * descriptor; they all read from the same open archive. By default the following formats are
+ * recognized, in this order:
+ * </p>
+ * <ol>
+ *     <li>{@value GeneratedDescriptorFinder#INDEX_FILE} - {@link GeneratedDescriptorFinder}</li>
+ *     <li>{@code plugin.yml} - {@link YamlDescriptorFinder}</li>
+ *     <li>{@code plugin.xml} - {@link XmlDescriptorFinder}</li>
+ *     <li>{@code META-INF/MANIFEST.MF} - {@link ManifestDescriptorFinder}</li>
+ * </ol>
+ *
+ * @see PluginDescriptorFinder
+ * @see PluginArchive#getEntryNames()
+ */
+public class CompositeDescriptorFinder implements PluginDescriptorFinder {
+    private static final Logger log = LoggerFactory.getLogger(CompositeDescriptorFinder.class);
+    private final Map<String, PluginDescriptorFinder> findersByEntry;
+
+    /** Creates a finder that recognizes the generated index, YAML, XML and manifest descriptors. */
+    public CompositeDescriptorFinder() {
+        this(defaultFinders());
+    }
+
+    /**
+     * Creates a finder with custom formats.
+     *
+     * @param findersByEntry finders keyed by the JAR entry whose presence selects them, in the
+     *                       order they should be tried (e.g. a {@link LinkedHashMap})
+     */
+    public CompositeDescriptorFinder(Map<String, PluginDescriptorFinder> findersByEntry) {
+        this.findersByEntry = Collections.unmodifiableMap(new LinkedHashMap<>(findersByEntry));
+    }
+
+    @Override
+    public PluginDescriptor findPluginDescriptor(Path path) {
+        try (PluginArchive archive = new PluginArchive(path).retain()) {
+            return findPluginDescriptor(archive);
+        }
+    }
+
+    @Override
+    public PluginDescriptor findPluginDescriptor(PluginArchive archive) {
+        Set<String> entryNames;
+        try {
+            entryNames = archive.getEntryNames();
+        } catch (IOException e) {
+            log.debug("Could not read entries of {}: {}", archive.getPath(), e.getMessage(), e);
+            return null;
+        }
+        for (Map.Entry<String, PluginDescriptorFinder> format : findersByEntry.entrySet()) {
+            if (!entryNames.contains(format.getKey())) {
+                continue;
+            }
+            PluginDescriptor descriptor = format.getValue().findPluginDescriptor(archive);
+            if (descriptor != null) {
+                return descriptor;
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, PluginDescriptorFinder> defaultFinders() {
+        Map<String, PluginDescriptorFinder> finders = new LinkedHashMap<>();
+        finders.put(GeneratedDescriptorFinder.INDEX_FILE, new GeneratedDescriptorFinder());
+        finders.put("plugin.yml", new YamlDescriptorFinder());
+        finders.put("plugin.xml", new XmlDescriptorFinder());
+        finders.put(JarFile.MANIFEST_NAME, new ManifestDescriptorFinder());
+        return finders;
+    }
+}
@@ -0,0 +1,61 @@
+package dev.siea.jonion.descriptor.finder;
+
+import dev.siea.jonion.archive.PluginArchive;
+import dev.siea.jonion.descriptor.DescriptorCodec;
+import dev.siea.jonion.descriptor.PluginDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Finds a plugin descriptor in the binary index generated at compile time from a
+ * {@link dev.siea.jonion.annotation.JonionPlugin @JonionPlugin} annotation.
+ * <p>
+ * The index ({@value #INDEX_FILE}) holds the descriptor encoded with
+ * {@link DescriptorCodec#writeIndex(java.io.DataOutput, PluginDescriptor)},
+ * including the exported packages, and was validated by the annotation processor when the
+ * plugin was built. Reading it involves no YAML or XML parsing. JARs without an index (or with
+ * one written by an incompatible version) yield {@code null}, so this finder is typically tried
+ * before a {@link YamlDescriptorFinder} that handles hand-written descriptors.
+ * </p>
+ *
+ * @see dev.siea.jonion.annotation.JonionPlugin
+ * @see dev.siea.jonion.annotation.processor.JonionPluginProcessor
+ */
+public class GeneratedDescriptorFinder implements PluginDescriptorFinder {
+    private static final Logger log = LoggerFactory.getLogger(GeneratedDescriptorFinder.class);
+
+    /** Name of the index resource inside the plugin JAR. */
+    public static final String INDEX_FILE = "META-INF/jonion/plugin.idx";
+
+    @Override
+    public PluginDescriptor findPluginDescriptor(Path path) {
+        try (PluginArchive archive = new PluginArchive(path).retain()) {
+            return findPluginDescriptor(archive);
+        }
+    }
+
+    @Override
+    public PluginDescriptor findPluginDescriptor(PluginArchive archive) {
+        ByteBuffer buffer;
+        try (InputStream inputStream = archive.getInputStream(INDEX_FILE)) {
+            if (inputStream == null) {
+                return null;
+            }
+            buffer = ByteBuffer.wrap(inputStream.readAllBytes());
+        } catch (IOException e) {
+            log.debug("Could not read plugin index from {}: {}", archive.getPath(), e.getMessage(), e);
+            return null;
+        }
+        try {
+            return DescriptorCodec.readIndex(buffer);
+        } catch (IllegalArgumentException e) {
+            log.warn("Could not parse plugin index in {}: {}", archive.getPath(), e.getMessage());
+            return null;
+        }
+    }
+}
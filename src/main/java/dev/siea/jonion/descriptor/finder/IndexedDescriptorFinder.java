@@ -0,0 +1,252 @@
+package dev.siea.jonion.descriptor.finder;
+
+import dev.siea.jonion.archive.PluginArchive;
+import dev.siea.jonion.descriptor.DefaultPluginDescriptor;
+import dev.siea.jonion.descriptor.DescriptorCodec;
+import dev.siea.jonion.descriptor.PluginDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Caching {@link PluginDescriptorFinder} that remembers parsed descriptors in an index file so
+ * unchanged JARs are not opened again on the next discovery.
+ * <p>
+ * Each entry is keyed by the JAR's absolute path, size and last-modified time, plus an
+ * optional CRC-32C of its contents. On lookup, a JAR whose key still matches is answered
+ * from the index; any other JAR is passed to the delegate finder and the result recorded.
+ * The index is read once through a memory-mapped buffer and written back on {@link #flush()},
+ * which {@link dev.siea.jonion.manager.AbstractPluginManager} calls after every discovery
+ * pass. Entries for JARs that no longer exist are dropped on flush, so the index never
+ * outgrows the plugin directory.
+ * </p>
+ * <p>
+ * Only descriptors of exactly {@link DefaultPluginDescriptor} are cached, since that is what
+ * {@link DescriptorCodec} writes and reads back. A delegate that returns a subclass or another
+ * {@link PluginDescriptor} implementation is asked again on every lookup, so callers always
+ * receive the type the delegate produces.
+ * </p>
+ * <p>
+ * The index is a cache: a missing, outdated or corrupt file is ignored and rebuilt. This
+ * finder is safe for concurrent use as long as the delegate is.
+ * </p>
+ *
+ * @see PluginDescriptorFinder
+ * @see DescriptorCodec
+ */
+public class IndexedDescriptorFinder implements PluginDescriptorFinder, Flushable {
+    private static final Logger log = LoggerFactory.getLogger(IndexedDescriptorFinder.class);
+    private static final int MAGIC = 0x4A4E4958; // "JNIX"
+    private static final long NO_HASH = -1L;
+
+    private final PluginDescriptorFinder delegate;
+    private final Path indexFile;
+    private final boolean hashContents;
+    private final Map<String, IndexEntry> entries = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    private volatile boolean dirty;
+
+    /**
+     * Creates an indexing finder keyed by path, size and last-modified time.
+     *
+     * @param delegate  the finder used for JARs that are not (or no longer) in the index
+     * @param indexFile the index file to read and write (e.g. {@code plugins/.jonion-index})
+     */
+    public IndexedDescriptorFinder(PluginDescriptorFinder delegate, Path indexFile) {
+        this(delegate, indexFile, false);
+    }
+
+    /**
+     * Creates an indexing finder, optionally also keyed by a checksum of the JAR contents.
+     *
+     * @param delegate     the finder used for JARs that are not (or no longer) in the index
+     * @param indexFile    the index file to read and write (e.g. {@code plugins/.jonion-index})
+     * @param hashContents true to also compare a CRC-32C of each JAR, which detects replaced
+     *                     files that kept their size and timestamp at the cost of reading them
+     */
+    public IndexedDescriptorFinder(PluginDescriptorFinder delegate, Path indexFile, boolean hashContents) {
+        this.delegate = delegate;
+        this.indexFile = indexFile;
+        this.hashContents = hashContents;
+    }
+
+    @Override
+    public PluginDescriptor findPluginDescriptor(Path path) {
+        try (PluginArchive archive = new PluginArchive(path).retain()) {
+            return findPluginDescriptor(archive);
+        }
+    }
+
+    @Override
+    public PluginDescriptor findPluginDescriptor(PluginArchive archive) {
+        ensureLoaded();
+
+        Path path = archive.getPath();
+        String key = path.toAbsolutePath().normalize().toString();
+        long size = archive.getSize();
+        long lastModified = archive.getLastModified();
+        long hash = NO_HASH;
+        if (hashContents) {
+            try {
+                hash = hash(path);
+            } catch (IOException e) {
+                log.debug("Could not hash {}: {}", path, e.getMessage(), e);
+                return delegate.findPluginDescriptor(archive);
+            }
+        }
+
+        IndexEntry entry = entries.get(key);
+        if (entry != null && entry.size == size && entry.lastModified == lastModified && entry.hash == hash) {
+            return entry.descriptor;
+        }
+
+        PluginDescriptor descriptor = delegate.findPluginDescriptor(archive);
+        if (descriptor != null && size >= 0 && isCacheable(descriptor)) {
+            entries.put(key, new IndexEntry(size, lastModified, hash, descriptor));
+            dirty = true;
+        } else if (entries.remove(key) != null) {
+            dirty = true;
+        }
+        return descriptor;
+    }
+
+    /**
+     * Writes the index file if it changed since it was read, dropping entries for JARs that
+     * no longer exist. The file is replaced atomically where the file system supports it.
+     *
+     * @throws IOException if the index cannot be written
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (!loaded) {
+            return;
+        }
+        if (entries.keySet().removeIf(key -> !Files.exists(Path.of(key)))) {
+            dirty = true;
+        }
+        if (!dirty) {
+            return;
+        }
+
+        Path parent = indexFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(DescriptorCodec.FORMAT_VERSION);
+            Map<String, IndexEntry> snapshot = Map.copyOf(entries);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, IndexEntry> mapEntry : snapshot.entrySet()) {
+                IndexEntry entry = mapEntry.getValue();
+                DescriptorCodec.writeString(out, mapEntry.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeLong(entry.hash);
+                DescriptorCodec.write(out, entry.descriptor);
+            }
+        }
+        try {
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        dirty = false;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            if (Files.isRegularFile(indexFile)) {
+                try {
+                    readIndex();
+                } catch (IOException | RuntimeException e) {
+                    log.debug("Ignoring unreadable descriptor index {}: {}", indexFile, e.getMessage(), e);
+                    entries.clear();
+                    dirty = true;
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private void readIndex() throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a descriptor index");
+            }
+            if (buffer.getInt() != DescriptorCodec.FORMAT_VERSION) {
+                throw new IOException("Descriptor index was written by a different version");
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                readEntry(buffer);
+            }
+        }
+    }
+
+    private void readEntry(ByteBuffer buffer) {
+        String key = DescriptorCodec.readString(buffer);
+        long size = buffer.getLong();
+        long lastModified = buffer.getLong();
+        long hash = buffer.getLong();
+        PluginDescriptor descriptor = DescriptorCodec.read(buffer);
+        entries.put(key, new IndexEntry(size, lastModified, hash, descriptor));
+    }
+
+    /**
+     * Returns whether the codec can round-trip the descriptor without changing its type; any
+     * other descriptor would come back from the index as a plain {@link DefaultPluginDescriptor}.
+     */
+    private static boolean isCacheable(PluginDescriptor descriptor) {
+        return descriptor.getClass() == DefaultPluginDescriptor.class;
+    }
+
+    private static long hash(Path path) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static final class IndexEntry {
+        private final long size;
+        private final long lastModified;
+        private final long hash;
+        private final PluginDescriptor descriptor;
+
+        private IndexEntry(long size, long lastModified, long hash, PluginDescriptor descriptor) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.descriptor = descriptor;
+        }
+    }
+}
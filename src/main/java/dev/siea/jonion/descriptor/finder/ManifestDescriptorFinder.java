@@ -0,0 +1,111 @@
+package dev.siea.jonion.descriptor.finder;
+
+import dev.siea.jonion.archive.PluginArchive;
+import dev.siea.jonion.dependency.PluginDependency;
+import dev.siea.jonion.descriptor.DefaultPluginDescriptor;
+import dev.siea.jonion.descriptor.PluginDescriptor;
+import dev.siea.jonion.lifecycle.PluginTier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+/**
+ * Finds a plugin descriptor in the main attributes of the JAR manifest.
+ * <p>
+ * Recognized attributes are {@code Plugin-Id} and {@code Plugin-Class} (both required),
+ * {@code Plugin-Version}, {@code Plugin-Description}, {@code Plugin-License},
+ * {@code Plugin-Authors} (comma-separated), {@code Plugin-Dependencies} (comma-separated
+ * plugin IDs; a trailing {@code ?} marks a dependency as optional, e.g. {@code core, metrics?}),
+ * {@code Plugin-Exports} (comma-separated package names) and {@code Plugin-Tier} (a
+ * {@link PluginTier} name).
+ * The manifest is read through the archive's cached copy, so this finder costs no extra I/O
+ * when the class loader reads the manifest too.
+ * </p>
+ *
+ * @see PluginDescriptorFinder
+ * @see CompositeDescriptorFinder
+ */
+public class ManifestDescriptorFinder implements PluginDescriptorFinder {
+    private static final Logger log = LoggerFactory.getLogger(ManifestDescriptorFinder.class);
+
+    @Override
+    public PluginDescriptor findPluginDescriptor(Path path) {
+        try (PluginArchive archive = new PluginArchive(path).retain()) {
+            return findPluginDescriptor(archive);
+        }
+    }
+
+    @Override
+    public PluginDescriptor findPluginDescriptor(PluginArchive archive) {
+        Manifest manifest;
+        try {
+            manifest = archive.getManifest();
+        } catch (IOException e) {
+            log.debug("Could not read manifest from {}: {}", archive.getPath(), e.getMessage(), e);
+            return null;
+        }
+        if (manifest == null) {
+            return null;
+        }
+        Attributes attributes = manifest.getMainAttributes();
+        String pluginId = trimToNull(attributes.getValue("Plugin-Id"));
+        String pluginClass = trimToNull(attributes.getValue("Plugin-Class"));
+        if (pluginId == null || pluginClass == null) {
+            return null;
+        }
+        String description = attributes.getValue("Plugin-Description");
+        String version = attributes.getValue("Plugin-Version");
+        String license = attributes.getValue("Plugin-License");
+        DefaultPluginDescriptor descriptor = new DefaultPluginDescriptor(pluginId,
+                description != null ? description.trim() : "",
+                version != null ? version.trim() : "UNDEFINED",
+                pluginClass,
+                split(attributes.getValue("Plugin-Authors")),
+                license != null ? license.trim() : "UNDEFINED");
+
+        for (String dependency : split(attributes.getValue("Plugin-Dependencies"))) {
+            boolean optional = dependency.endsWith("?");
+            String dependencyId = optional ? dependency.substring(0, dependency.length() - 1).trim() : dependency;
+            if (!dependencyId.isEmpty()) {
+                descriptor.addDependency(new PluginDependency(dependencyId, optional));
+            }
+        }
+        split(attributes.getValue("Plugin-Exports")).forEach(descriptor::addExportedPackage);
+        String tierName = attributes.getValue("Plugin-Tier");
+        PluginTier tier = PluginTier.fromName(tierName);
+        if (tier == null && tierName != null) {
+            log.warn("Unknown plugin tier '{}' in {}; using {}", tierName, archive.getPath(), PluginTier.NORMAL);
+        }
+        descriptor.setTier(tier);
+        return descriptor;
+    }
+
+    private static List<String> split(String value) {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (String part : value.split(",")) {
+            String trimmed = part.trim();
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed);
+            }
+        }
+        return result;
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+}
@@ -1,5 +1,6 @@
 package dev.siea.jonion.descriptor.finder;
 
+import dev.siea.jonion.archive.PluginArchive;
 import dev.siea.jonion.descriptor.PluginDescriptor;
 
 import java.nio.file.Path;
@@ -15,6 +16,10 @@ import java.nio.file.Path;
  * @see PluginDescriptor
  * @see YamlDescriptorFinder
  * @see XmlDescriptorFinder
+ * @see IndexedDescriptorFinder
+ * @see GeneratedDescriptorFinder
+ * @see ManifestDescriptorFinder
+ * @see CompositeDescriptorFinder
  * @see dev.siea.jonion.manager.AbstractPluginManager
  */
 public interface PluginDescriptorFinder {
@@ -25,4 +30,18 @@ public interface PluginDescriptorFinder {
      * @return the parsed descriptor, or {@code null} if not found or invalid
      */
     PluginDescriptor findPluginDescriptor(Path path);
+
+    /**
+     * Attempts to find and parse a plugin descriptor from an already opened plugin archive.
+     * The manager uses this variant during discovery so the JAR is shared with the class
+     * loader and configuration finder; implementations should read through the archive
+     * instead of opening the file again. The default implementation falls back to
+     * {@link #findPluginDescriptor(Path)}.
+     *
+     * @param archive the shared handle to the plugin JAR
+     * @return the parsed descriptor, or {@code null} if not found or invalid
+     */
+    default PluginDescriptor findPluginDescriptor(PluginArchive archive) {
+        return findPluginDescriptor(archive.getPath());
+    }
 }
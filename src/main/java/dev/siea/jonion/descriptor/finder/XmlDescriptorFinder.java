@@ -1,23 +1,26 @@
 package dev.siea.jonion.descriptor.finder;
 
+import dev.siea.jonion.archive.PluginArchive;
 import dev.siea.jonion.dependency.PluginDependency;
 import dev.siea.jonion.descriptor.DefaultPluginDescriptor;
 import dev.siea.jonion.descriptor.PluginDescriptor;
+import dev.siea.jonion.lifecycle.PluginTier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Finds and parses a plugin descriptor from an XML file inside the plugin JAR.
@@ -25,7 +28,14 @@ import java.util.jar.JarFile;
  * Looks for a file (default {@code plugin.xml}) at the JAR root. Expected structure includes
  * {@code name}, {@code main}, {@code version}, {@code description}, {@code authors}
  * (with {@code author} children), {@code license}, and optionally {@code dependencies}
- * with {@code dependency} elements (attributes {@code id} and {@code optional}).
+ * with {@code dependency} elements (attributes {@code id} and {@code optional}),
+ * {@code exports} with {@code package} children, and {@code tier} (a {@link PluginTier} name
+ * such as {@code critical}).
+ * </p>
+ * <p>
+ * The file is read with a streaming StAX parser from a shared factory; no DOM is built and
+ * parsing stops as soon as every known field has been read. DTDs and external entities are
+ * not processed.
  * </p>
  *
  * @see PluginDescriptorFinder
@@ -33,6 +43,9 @@ import java.util.jar.JarFile;
  */
 public class XmlDescriptorFinder implements PluginDescriptorFinder {
     private static final Logger log = LoggerFactory.getLogger(XmlDescriptorFinder.class);
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+    private static final Set<String> FIELDS = Set.of("name", "main", "version", "description", "authors", "license", "dependencies", "exports", "tier");
+
     private final String descriptorFileName;
 
     /** Creates a finder that looks for {@code plugin.xml} in the JAR. */
@@ -51,111 +64,154 @@ public class XmlDescriptorFinder implements PluginDescriptorFinder {
 
     @Override
     public PluginDescriptor findPluginDescriptor(Path path) {
-        Document document;
-        try (JarFile jarFile = new JarFile(path.toFile())) {
-            JarEntry entry = jarFile.getJarEntry(descriptorFileName);
-            if (entry != null) {
-                try (InputStream inputStream = jarFile.getInputStream(entry)) {
-                    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-                    DocumentBuilder builder = factory.newDocumentBuilder();
-                    document = builder.parse(inputStream);
-                }
-            } else {
-                return null;
-            }
-        } catch (Exception e) {
-            log.debug("Could not read plugin descriptor from {}: {}", path, e.getMessage(), e);
-            return null;
+        try (PluginArchive archive = new PluginArchive(path).retain()) {
+            return findPluginDescriptor(archive);
         }
+    }
 
-        Element root = document.getDocumentElement();
-        if (root == null) {
+    @Override
+    public PluginDescriptor findPluginDescriptor(PluginArchive archive) {
+        try (InputStream inputStream = archive.getInputStream(descriptorFileName)) {
+            if (inputStream == null) {
+                return null;
+            }
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+            try {
+                return readDescriptor(reader, archive);
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | XMLStreamException e) {
+            log.debug("Could not read plugin descriptor from {}: {}", archive.getPath(), e.getMessage(), e);
             return null;
         }
+    }
 
-        String pluginId = getTextContent(root, "name");
-        if (pluginId == null || pluginId.isEmpty()) {
+    private DefaultPluginDescriptor readDescriptor(XMLStreamReader reader, PluginArchive archive) throws XMLStreamException {
+        if (nextTag(reader) != XMLStreamConstants.START_ELEMENT) {
             return null;
         }
-
-        String description = getTextContent(root, "description");
-        if (description == null) {
-            description = "";
-        }
-
-        String version = getTextContent(root, "version");
-        if (version == null) {
-            version = "UNDEFINED";
+        Map<String, String> values = new HashMap<>();
+        List<String> authors = new ArrayList<>();
+        List<String> exports = new ArrayList<>();
+        List<PluginDependency> dependencies = new ArrayList<>();
+        Set<String> remaining = new HashSet<>(FIELDS);
+        // Walk the root's children only until every known field has been read; unknown and
+        // repeated elements are skipped without counting towards that.
+        while (!remaining.isEmpty() && nextTag(reader) == XMLStreamConstants.START_ELEMENT) {
+            String name = reader.getLocalName();
+            if (!remaining.remove(name)) {
+                skipElement(reader);
+            } else if ("authors".equals(name)) {
+                readList(reader, "author", authors);
+            } else if ("exports".equals(name)) {
+                readList(reader, "package", exports);
+            } else if ("dependencies".equals(name)) {
+                readDependencies(reader, dependencies);
+            } else {
+                values.put(name, readText(reader).trim());
+            }
         }
 
-        String pluginClass = getTextContent(root, "main");
-        if (pluginClass == null || pluginClass.isEmpty()) {
+        String pluginId = values.get("name");
+        String pluginClass = values.get("main");
+        if (pluginId == null || pluginId.isEmpty() || pluginClass == null || pluginClass.isEmpty()) {
             return null;
         }
+        DefaultPluginDescriptor descriptor = new DefaultPluginDescriptor(pluginId,
+                values.getOrDefault("description", ""),
+                values.getOrDefault("version", "UNDEFINED"),
+                pluginClass, authors,
+                values.getOrDefault("license", "UNDEFINED"));
+        dependencies.forEach(descriptor::addDependency);
+        exports.forEach(descriptor::addExportedPackage);
+        String tierName = values.get("tier");
+        PluginTier tier = PluginTier.fromName(tierName);
+        if (tier == null && tierName != null) {
+            log.warn("Unknown plugin tier '{}' in {}; using {}", tierName, archive.getPath(), PluginTier.NORMAL);
+        }
+        descriptor.setTier(tier);
+        return descriptor;
+    }
 
-        List<String> authors = getListContent(root);
-        String license = getTextContent(root, "license");
-        if (license == null) {
-            license = "UNDEFINED";
+    /** Collects the non-empty text of the current element's {@code childName} children. */
+    private void readList(XMLStreamReader reader, String childName, List<String> values) throws XMLStreamException {
+        while (nextTag(reader) == XMLStreamConstants.START_ELEMENT) {
+            if (childName.equals(reader.getLocalName())) {
+                String text = readText(reader).trim();
+                if (!text.isEmpty()) {
+                    values.add(text);
+                }
+            } else {
+                skipElement(reader);
+            }
         }
+    }
 
-        DefaultPluginDescriptor descriptor = new DefaultPluginDescriptor(
-                pluginId, description, version, pluginClass, authors, license);
-
-        Element dependenciesElement = getFirstChildElement(root, "dependencies");
-        if (dependenciesElement != null) {
-            NodeList dependencyNodes = dependenciesElement.getElementsByTagName("dependency");
-            for (int i = 0; i < dependencyNodes.getLength(); i++) {
-                Node node = dependencyNodes.item(i);
-                if (node instanceof Element dep) {
-                    String id = dep.getAttribute("id");
-                    if (!id.isEmpty()) {
-                        boolean optional = Boolean.parseBoolean(dep.getAttribute("optional"));
-                        descriptor.addDependency(new PluginDependency(id, optional));
+    private void readDependencies(XMLStreamReader reader, List<PluginDependency> dependencies) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if ("dependency".equals(reader.getLocalName())) {
+                    String id = reader.getAttributeValue(null, "id");
+                    if (id != null && !id.isEmpty()) {
+                        boolean optional = Boolean.parseBoolean(reader.getAttributeValue(null, "optional"));
+                        dependencies.add(new PluginDependency(id, optional));
                     }
                 }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
             }
         }
-
-        return descriptor;
     }
 
-    private String getTextContent(Element parent, String tagName) {
-        Element element = getFirstChildElement(parent, tagName);
-        if (element == null) {
-            return null;
+    /** Reads all text inside the current element, including nested elements, and moves past its end tag. */
+    private String readText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                text.append(reader.getText());
+            }
         }
-        String text = element.getTextContent();
-        return text != null ? text.trim() : null;
+        return text.toString();
     }
 
-    private List<String> getListContent(Element parent) {
-        List<String> result = new ArrayList<>();
-        Element container = getFirstChildElement(parent, "authors");
-        if (container == null) {
-            return result;
-        }
-        NodeList children = container.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node node = children.item(i);
-            if (node instanceof Element && "author".equals(((Element) node).getTagName())) {
-                String text = node.getTextContent();
-                if (text != null && !text.trim().isEmpty()) {
-                    result.add(text.trim());
-                }
+    /** Advances to the next start or end tag, ignoring text, comments and other events in between. */
+    private int nextTag(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_ELEMENT) {
+                return event;
             }
         }
-        return result;
+        return XMLStreamConstants.END_DOCUMENT;
     }
 
-    private Element getFirstChildElement(Element parent, String tagName) {
-        NodeList children = parent.getChildNodes();
-        for (int i = 0; i < children.getLength(); i++) {
-            Node node = children.item(i);
-            if (node instanceof Element && tagName.equals(((Element) node).getTagName())) {
-                return (Element) node;
+    private void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
             }
         }
-        return null;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
     }
 }
@@ -1,8 +1,10 @@
 package dev.siea.jonion.descriptor.finder;
 
+import dev.siea.jonion.archive.PluginArchive;
 import dev.siea.jonion.dependency.PluginDependency;
 import dev.siea.jonion.descriptor.DefaultPluginDescriptor;
 import dev.siea.jonion.descriptor.PluginDescriptor;
+import dev.siea.jonion.lifecycle.PluginTier;
 import org.simpleyaml.configuration.ConfigurationSection;
 import org.simpleyaml.configuration.file.YamlConfiguration;
 import org.slf4j.Logger;
@@ -13,15 +15,15 @@ import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 /**
  * Finds and parses a plugin descriptor from a YAML file inside the plugin JAR.
  * <p>
  * Looks for a file (default {@code plugin.yml}) at the JAR root. Expected keys include
  * {@code name}, {@code main}, {@code version}, {@code description}, {@code authors},
- * {@code license}, and optionally {@code dependencies} (map of plugin ID to optional boolean).
+ * {@code license}, and optionally {@code dependencies} (map of plugin ID to optional boolean),
+ * {@code exports} (list of package names) and {@code tier} (a {@link PluginTier} name such as
+ * {@code critical}).
  * </p>
  *
  * @see PluginDescriptorFinder
@@ -47,18 +49,21 @@ public class YamlDescriptorFinder implements PluginDescriptorFinder {
 
     @Override
     public PluginDescriptor findPluginDescriptor(Path path) {
+        try (PluginArchive archive = new PluginArchive(path).retain()) {
+            return findPluginDescriptor(archive);
+        }
+    }
+
+    @Override
+    public PluginDescriptor findPluginDescriptor(PluginArchive archive) {
         YamlConfiguration yamlConfig = new YamlConfiguration();
-        try (JarFile jarFile = new JarFile(path.toFile())) {
-            JarEntry entry = jarFile.getJarEntry(descriptorFileName);
-            if (entry != null) {
-                try (InputStream inputStream = jarFile.getInputStream(entry)) {
-                    yamlConfig.load(inputStream);
-                }
-            } else {
+        try (InputStream inputStream = archive.getInputStream(descriptorFileName)) {
+            if (inputStream == null) {
                 return null;
             }
+            yamlConfig.load(inputStream);
         } catch (IOException e) {
-            log.debug("Could not read plugin descriptor from {}: {}", path, e.getMessage(), e);
+            log.debug("Could not read plugin descriptor from {}: {}", archive.getPath(), e.getMessage(), e);
             return null;
         }
         String pluginId = yamlConfig.getString("name");
@@ -71,6 +76,16 @@ public class YamlDescriptorFinder implements PluginDescriptorFinder {
         }
         String license = yamlConfig.getString("license", "UNDEFINED");
         DefaultPluginDescriptor descriptor = new DefaultPluginDescriptor(pluginId, description, version, pluginClass, authors, license);
+        String tierName = yamlConfig.getString("tier");
+        PluginTier tier = PluginTier.fromName(tierName);
+        if (tier == null && tierName != null) {
+            log.warn("Unknown plugin tier '{}' in {}; using {}", tierName, archive.getPath(), PluginTier.NORMAL);
+        }
+        descriptor.setTier(tier);
+        List<String> exports = yamlConfig.getStringList("exports");
+        if (exports != null) {
+            exports.forEach(descriptor::addExportedPackage);
+        }
 
         ConfigurationSection configurationSection = yamlConfig.getConfigurationSection("dependencies");
         if (configurationSection != null) {
@@ -10,6 +10,15 @@ package dev.siea.jonion.exceptions;
  * @see PluginLoadException
  */
 public class PluginException extends Exception {
+    /**
+     * Constructs a new PluginException with the specified detail message.
+     *
+     * @param message the detail message
+     */
+    public PluginException(String message) {
+        super(message);
+    }
+
     /**
      * Constructs a new PluginException with the specified detail message and cause.
      *
@@ -13,6 +13,15 @@ package dev.siea.jonion.exceptions;
  * @see dev.siea.jonion.PluginFactory
  */
 public class PluginLoadException extends PluginException {
+    /**
+     * Constructs a new PluginLoadException with the specified detail message.
+     *
+     * @param message the detail message
+     */
+    public PluginLoadException(String message) {
+        super(message);
+    }
+
     /**
      * Constructs a new PluginLoadException with the specified detail message and cause.
      *
@@ -5,7 +5,7 @@ package dev.siea.jonion.lifecycle;
  * <p>
  * Used by {@link dev.siea.jonion.PluginWrapper} and
  * {@link dev.siea.jonion.manager.PluginManager} to track whether a plugin has been
- * created, successfully loaded, failed during load, or unloaded.
+ * created, resolved for lazy activation, successfully loaded, failed during load, or unloaded.
  * </p>
  *
  * @see dev.siea.jonion.PluginWrapper#getState()
@@ -15,6 +15,12 @@ public enum PluginState {
     /** Wrapper created from descriptor; plugin not yet loaded. */
     CREATED,
 
+    /**
+     * Dependencies resolved but plugin not yet loaded; it is loaded on first access
+     * ({@link dev.siea.jonion.PluginWrapper#activate()}). Only used with lazy activation.
+     */
+    RESOLVED,
+
     /** Plugin instance loaded and ready to use. */
     LOADED,
 
@@ -0,0 +1,26 @@
+package dev.siea.jonion.lifecycle;
+
+import dev.siea.jonion.PluginWrapper;
+
+/**
+ * Callback for {@link PluginState} transitions of a {@link PluginWrapper}.
+ * <p>
+ * Registered via {@link PluginWrapper#addStateListener(PluginStateListener)} and invoked
+ * synchronously on the thread that changed the state, after the change. Listeners are only
+ * told about actual transitions, never about a state being set to its current value.
+ * </p>
+ *
+ * @see PluginWrapper#addStateListener(PluginStateListener)
+ * @see PluginState
+ */
+@FunctionalInterface
+public interface PluginStateListener {
+    /**
+     * Called after a plugin's state changed.
+     *
+     * @param pluginWrapper the plugin whose state changed
+     * @param oldState      the previous state
+     * @param newState      the new state
+     */
+    void onStateChanged(PluginWrapper pluginWrapper, PluginState oldState, PluginState newState);
+}
@@ -0,0 +1,43 @@
+package dev.siea.jonion.lifecycle;
+
+import java.util.Locale;
+
+/**
+ * Startup priority of a plugin, declared in its descriptor (e.g. {@code tier: critical}).
+ * <p>
+ * {@link dev.siea.jonion.manager.DefaultPluginManager#startTiered(java.time.Duration)} starts
+ * the tiers in declaration order: {@link #CRITICAL} plugins synchronously, the others in the
+ * background. A plugin is always started in the earliest tier of any plugin that depends on
+ * it, so a critical plugin never waits for a background dependency.
+ * </p>
+ *
+ * @see dev.siea.jonion.descriptor.PluginDescriptor#getTier()
+ * @see dev.siea.jonion.manager.DefaultPluginManager#getTierReadiness(PluginTier)
+ */
+public enum PluginTier {
+    /** Required before the host can serve; started before {@code startTiered} returns. */
+    CRITICAL,
+
+    /** Regular plugins; the default when a descriptor declares no tier. */
+    NORMAL,
+
+    /** Optional functionality that may become available last. */
+    BACKGROUND;
+
+    /**
+     * Parses a tier name, ignoring case and surrounding whitespace.
+     *
+     * @param name the tier name (e.g. {@code critical}), may be null
+     * @return the matching tier, or {@code null} if the name is null or unknown
+     */
+    public static PluginTier fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -1,29 +1,132 @@
 package dev.siea.jonion.loader;
 
+import dev.siea.jonion.archive.MappedZipFile;
+import dev.siea.jonion.archive.PluginArchive;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.jar.JarFile;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.jar.Manifest;
 
 /**
  * Class loader that loads classes from a plugin JAR and its manifest Class-Path entries.
  * <p>
- * Extends {@link URLClassLoader} with the JAR path as the primary URL. If the JAR has a
- * {@code Class-Path} attribute in its manifest, those entries are added as additional URLs
- * so the plugin can resolve dependencies packaged or referenced alongside it. Used by
- * {@link dev.siea.jonion.PluginWrapper} to create an isolated class-loading context per plugin.
+ * The plugin JAR is memory-mapped once through a {@link MappedZipFile}: its classes are
+ * defined straight from the stored or inflated entry bytes with
+ * {@link #defineClass(String, ByteBuffer, java.security.CodeSource)}, and its resources are
+ * served from the mapping through {@code jar:} URLs, so no {@link java.util.jar.JarFile} is
+ * opened for it.
+ * Library JARs packaged in the plugin JAR's {@code lib/} directory are read the same way,
+ * straight from the enclosing mapping without being extracted, and come after the plugin's
+ * own classes in name order. If the JAR has a {@code Class-Path} attribute in its manifest,
+ * those entries are loaded through {@link URLClassLoader} so the plugin can resolve
+ * dependencies referenced alongside it. Used by {@link dev.siea.jonion.PluginWrapper} to
+ * create an isolated class-loading context per plugin.
+ * </p>
+ * <p>
+ * Nested libraries are best stored uncompressed in the plugin JAR ({@code jar --no-compress}
+ * or the equivalent build setting): a stored library is read in place from the mapping, while
+ * a compressed one has to be inflated into memory when the loader is created.
+ * </p>
+ * <p>
+ * Because the loader reads a mapping rather than the file, a loaded plugin's JAR can be
+ * replaced by moving a new file into its place; the loader keeps reading the old contents.
+ * Overwriting the file in place is not safe. JAR signatures are not verified and sealed
+ * packages are not enforced for the plugin JAR.
+ * </p>
+ * <p>
+ * The entries of the plugin JAR and its nested libraries are also indexed as resources, so
+ * {@link #findResource(String)} finds a plugin's own files with one hash lookup and
+ * {@link #getResourceAsStream(String)} streams stored entries straight from the mapping.
+ * Resource lookups stay parent-first like class loading: the mapping only serves names the
+ * parent does not have. {@link #getResourceBuffer(String)} returns such an entry as a
+ * read-only view of the mapping that can be written to a channel without copying.
+ * </p>
+ * <p>
+ * When the loader is created it indexes the class entries of the plugin JAR and of every
+ * Class-Path JAR from their central directories. Delegation stays parent-first, so a plugin
+ * that bundles a library the application already has (such as SLF4J) shares the
+ * application's copy. For a class in the index the parent is first asked only whether it has
+ * the class file, which does not throw; if it does not, the class is defined by this loader
+ * directly instead of going through a failed parent lookup. The Java platform and the Jonion
+ * API are delegated to the parent without that check. Names that neither the parent nor this
+ * loader could find are remembered in a bounded, least-recently-used negative cache, and the
+ * resulting {@link ClassNotFoundException}s carry no stack trace, so repeated probes for
+ * optional classes stay cheap. If a Class-Path entry cannot be indexed (a directory or a
+ * remote URL), names missing from the index are still looked up in this loader's URLs after
+ * the parent, and misses are not cached, since such an entry can gain classes later.
+ * </p>
+ * <p>
+ * A plugin loader can also see the packages exported by the loaders of the plugins it depends
+ * on. The packages of every dependency loader are collected into an import index when the
+ * loader is created, so a class in an imported package is found with a single hash lookup and
+ * is defined once, by the plugin that exports it, instead of once per plugin that shades it.
+ * Imported packages take precedence over this loader's own copies, but not over classes the
+ * parent has. Without an explicit export
+ * list a loader exports every package of its plugin JAR, but not those of its nested or
+ * Class-Path libraries.
+ * </p>
+ * <p>
+ * The loader is registered as parallel capable, so {@link #getClassLoadingLock(String)} hands
+ * out one lock per class name and threads loading different classes from the same plugin do
+ * not contend. All lookup state is either immutable after construction or concurrent.
+ * </p>
+ * <p>
+ * To speed up the next start, a loader can {@link #startRecording() record} the order in which
+ * the plugin first uses its classes, and a new loader can {@link #preload(Collection) preload}
+ * such a list on a background thread, so the classes are already defined when the plugin asks
+ * for them.
  * </p>
  *
  * @see dev.siea.jonion.PluginWrapper
  * @see URLClassLoader
+ * @see MappedZipFile
+ * @see dev.siea.jonion.archive.PluginArchive
  */
 public class CustomClassLoader extends URLClassLoader {
+    private static final Logger log = LoggerFactory.getLogger(CustomClassLoader.class);
+    private static final int NEGATIVE_CACHE_SIZE = 4096;
+    private static final String[] PARENT_FIRST_PREFIXES = {"java.", "javax.", "jdk.", "sun.", "dev.siea.jonion."};
+    private static final String NESTED_LIBRARY_DIRECTORY = "lib/";
+
+    private final URL jarUrl;
+    private final List<MappedJar> mappedJars;
+    private final Map<String, MappedJar> mappedClasses;
+    private final Map<String, MappedJar> mappedResources;
+    private volatile boolean closed;
+    private final Set<String> localClasses;
+    private final Set<String> exportedPackages;
+    private final Map<String, CustomClassLoader> importedPackages;
+    private final boolean indexComplete;
+    private final Map<String, Boolean> missingClasses = Collections.synchronizedMap(new MissingClassCache());
+    private volatile Recording recording;
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
 
     /**
      * Creates a class loader that loads from the given JAR and its manifest Class-Path.
@@ -33,31 +136,129 @@ public class CustomClassLoader extends URLClassLoader {
      * @throws IOException if the JAR cannot be opened or read
      */
     public CustomClassLoader(Path jarPath, ClassLoader parent) throws IOException {
-        super(buildUrls(jarPath), parent);
+        this(new PluginArchive(jarPath), parent);
+    }
+
+    /**
+     * Creates a class loader that loads from the given plugin archive and its manifest
+     * Class-Path, reusing the archive's cached manifest.
+     *
+     * @param archive the shared handle to the plugin JAR
+     * @param parent  the parent class loader for delegation
+     * @throws IOException if the JAR cannot be opened or read
+     */
+    public CustomClassLoader(PluginArchive archive, ClassLoader parent) throws IOException {
+        this(archive, parent, Collections.emptyList(), Collections.emptyList());
     }
 
-    private static URL[] buildUrls(Path jarPath) throws IOException {
+    /**
+     * Creates a class loader for a plugin that depends on other plugins. Classes in packages
+     * exported by {@code dependencies} are loaded through the dependency's loader; if several
+     * dependencies export the same package, the first one wins.
+     *
+     * @param archive          the shared handle to the plugin JAR
+     * @param parent           the parent class loader for delegation
+     * @param exportedPackages the packages this loader makes available to its dependents; if
+     *                         empty, every package of the plugin JAR is exported
+     * @param dependencies     the loaders of the plugins this plugin depends on, in declaration order
+     * @throws IOException if the JAR cannot be opened or read
+     * @see dev.siea.jonion.descriptor.PluginDescriptor#getExportedPackages()
+     */
+    public CustomClassLoader(PluginArchive archive, ClassLoader parent, Collection<String> exportedPackages,
+                             Collection<CustomClassLoader> dependencies) throws IOException {
+        super(classPathUrls(archive), parent);
+        MappedJar pluginJar = MappedJar.open(archive.getZipFile(), archive.getPath(), archive.getManifest());
+        this.jarUrl = pluginJar.getCodeSource().getLocation();
+        this.mappedJars = openMappedJars(pluginJar);
+
+        Map<String, MappedJar> mapped = new HashMap<>();
+        Map<String, MappedJar> resources = new HashMap<>();
+        for (MappedJar jar : mappedJars) {
+            for (String entryName : jar.getZipFile().getEntryNames()) {
+                String className = className(entryName);
+                if (className != null) {
+                    mapped.putIfAbsent(className, jar);
+                } else {
+                    resources.putIfAbsent(entryName, jar);
+                }
+            }
+        }
+        this.mappedClasses = mapped;
+        this.mappedResources = resources;
+        if (exportedPackages.isEmpty()) {
+            Set<String> packages = new HashSet<>();
+            mapped.forEach((className, jar) -> {
+                if (jar == pluginJar) {
+                    packages.add(packageName(className));
+                }
+            });
+            this.exportedPackages = Collections.unmodifiableSet(packages);
+        } else {
+            this.exportedPackages = Set.copyOf(exportedPackages);
+        }
+
+        Set<String> classes = new HashSet<>(mapped.keySet());
+        boolean complete = true;
+        for (URL url : super.getURLs()) {
+            complete &= indexClassPathEntry(url, classes);
+        }
+        this.localClasses = classes;
+        this.indexComplete = complete;
+
+        Map<String, CustomClassLoader> imports = new HashMap<>();
+        for (CustomClassLoader dependency : dependencies) {
+            for (String packageName : dependency.getExportedPackages()) {
+                imports.putIfAbsent(packageName, dependency);
+            }
+        }
+        this.importedPackages = imports;
+    }
+
+    /** Returns the plugin JAR followed by the library JARs nested in its {@code lib/} directory, in name order. */
+    private static List<MappedJar> openMappedJars(MappedJar pluginJar) throws IOException {
+        List<MappedJar> jars = new ArrayList<>();
+        jars.add(pluginJar);
+        MappedZipFile zipFile = pluginJar.getZipFile();
+        for (String entryName : new TreeSet<>(zipFile.getEntryNames())) {
+            if (!isNestedLibrary(entryName)) {
+                continue;
+            }
+            try {
+                jars.add(pluginJar.nested(zipFile.getEntry(entryName)));
+            } catch (IOException e) {
+                throw new IOException("Cannot read nested library " + entryName + ": " + e.getMessage(), e);
+            }
+        }
+        return jars;
+    }
+
+    private static boolean isNestedLibrary(String entryName) {
+        return entryName.startsWith(NESTED_LIBRARY_DIRECTORY)
+                && entryName.endsWith(".jar")
+                && entryName.indexOf('/', NESTED_LIBRARY_DIRECTORY.length()) < 0;
+    }
+
+    /** Returns the URLs of the manifest Class-Path entries; the plugin JAR itself is read through its mapping. */
+    private static URL[] classPathUrls(PluginArchive archive) throws IOException {
+        Path jarPath = archive.getPath();
         List<URL> urls = new ArrayList<>();
-        urls.add(jarPath.toUri().toURL());
 
         Path baseDir = jarPath.getParent() != null ? jarPath.getParent() : Paths.get(".");
 
-        try (JarFile jarFile = new JarFile(jarPath.toFile())) {
-            Manifest manifest = jarFile.getManifest();
-            if (manifest != null) {
-                String classPath = manifest.getMainAttributes().getValue("Class-Path");
-                if (classPath != null) {
-                    for (String entry : classPath.split("\\s+")) {
-                        if (entry.isEmpty()) {
-                            continue;
-                        }
-                        try {
-                            URL url = new URL(entry);
-                            urls.add(url);
-                        } catch (MalformedURLException e) {
-                            Path resolved = baseDir.resolve(entry);
-                            urls.add(resolved.toUri().toURL());
-                        }
+        Manifest manifest = archive.getManifest();
+        if (manifest != null) {
+            String classPath = manifest.getMainAttributes().getValue("Class-Path");
+            if (classPath != null) {
+                for (String entry : classPath.split("\\s+")) {
+                    if (entry.isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        URL url = new URL(entry);
+                        urls.add(url);
+                    } catch (MalformedURLException e) {
+                        Path resolved = baseDir.resolve(entry);
+                        urls.add(resolved.toUri().toURL());
                     }
                 }
             }
@@ -67,22 +268,442 @@ public class CustomClassLoader extends URLClassLoader {
     }
 
     /**
-     * Loads the class, delegating to the parent first and then finding in this loader's URLs.
+     * Returns the plugin JAR followed by the manifest Class-Path entries.
      *
-     * @param name the binary name of the class
+     * @return the URLs this loader loads classes and resources from
+     */
+    @Override
+    public URL[] getURLs() {
+        URL[] classPath = super.getURLs();
+        URL[] urls = new URL[classPath.length + 1];
+        urls[0] = jarUrl;
+        System.arraycopy(classPath, 0, urls, 1, classPath.length);
+        return urls;
+    }
+
+    /**
+     * Adds the classes of a Class-Path entry to the index.
+     *
+     * @return false if the entry could not be indexed and has to be searched on a miss
+     */
+    private static boolean indexClassPathEntry(URL url, Set<String> classes) {
+        if (!"file".equals(url.getProtocol())) {
+            return false;
+        }
+        try {
+            Path path = Paths.get(url.toURI());
+            if (Files.notExists(path)) {
+                // URLClassLoader skips missing entries as well
+                return true;
+            }
+            if (!Files.isRegularFile(path)) {
+                return false;
+            }
+            for (String entryName : MappedZipFile.open(path).getEntryNames()) {
+                String className = className(entryName);
+                if (className != null) {
+                    classes.add(className);
+                }
+            }
+            return true;
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String packageName(String className) {
+        int lastDot = className.lastIndexOf('.');
+        return lastDot < 0 ? "" : className.substring(0, lastDot);
+    }
+
+    /** Returns the packages this loader makes available to the loaders of dependent plugins. */
+    public Set<String> getExportedPackages() {
+        return exportedPackages;
+    }
+
+    /** Returns the binary name of the class stored in the entry, or null if the entry is not a class. */
+    private static String className(String entryName) {
+        if (!entryName.endsWith(".class") || entryName.startsWith("META-INF/")) {
+            return null;
+        }
+        return entryName.substring(0, entryName.length() - 6).replace('/', '.');
+    }
+
+    /**
+     * Loads the class, parent first. For a class in a package imported from a dependency or
+     * indexed from this loader's JARs, the parent is only asked if it has the class file;
+     * otherwise the class is loaded through the dependency's loader or defined here directly.
+     * Other names are delegated to the parent and, if the index is incomplete, then searched
+     * in this loader's URLs. Misses are cached when every source of this loader is an indexed
+     * JAR.
+     *
+     * @param name    the binary name of the class
+     * @param resolve whether to link the class
      * @return the loaded class
      * @throws ClassNotFoundException if the class cannot be found
      */
     @Override
-    public Class<?> loadClass(String name) throws ClassNotFoundException {
-        try {
-            return super.loadClass(name);
-        } catch (ClassNotFoundException e) {
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> loadedClass = findLoadedClass(name);
+            if (loadedClass == null) {
+                loadedClass = lookupClass(name);
+            }
+            if (resolve) {
+                resolveClass(loadedClass);
+            }
+            record(name, loadedClass);
+            return loadedClass;
+        }
+    }
+
+    private Class<?> lookupClass(String name) throws ClassNotFoundException {
+        boolean local = localClasses.contains(name);
+        if (!isParentFirst(name)) {
+            CustomClassLoader exporter = importedPackages.isEmpty() ? null : importedPackages.get(packageName(name));
+            if ((local || exporter != null) && !parentHasClass(name)) {
+                if (exporter != null) {
+                    Class<?> importedClass = exporter.findExportedClass(name);
+                    if (importedClass != null) {
+                        return importedClass;
+                    }
+                }
+                if (local) {
+                    return findClass(name);
+                }
+            }
+        }
+        if (indexComplete && missingClasses.get(name) != null) {
+            throw new MissingClassException(name);
+        }
+        Class<?> parentClass = findParentClass(name);
+        if (parentClass != null) {
+            return parentClass;
+        }
+        if (local || !indexComplete) {
             try {
                 return findClass(name);
-            } catch (ClassNotFoundException ex) {
-                throw e;
+            } catch (ClassNotFoundException e) {
+                // recorded as a miss below
             }
         }
+        rememberMissing(name);
+        throw new MissingClassException(name);
+    }
+
+    /**
+     * Returns whether the parent may supply a class, by looking for its class file. A resource
+     * lookup answers a miss without the {@link ClassNotFoundException} that asking the parent
+     * to load the class would throw. Without a parent the answer is always yes.
+     */
+    private boolean parentHasClass(String name) {
+        ClassLoader parent = getParent();
+        return parent == null || parent.getResource(name.replace('.', '/').concat(".class")) != null;
+    }
+
+    /**
+     * Returns a class of this loader's JARs for a dependent loader, defining it if necessary,
+     * or null if it is not one of this loader's classes. Never delegates, so lookups cannot
+     * cycle between plugin loaders; the calling loader has already asked the parent.
+     */
+    Class<?> findExportedClass(String name) throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> loadedClass = findLoadedClass(name);
+            if (loadedClass == null && localClasses.contains(name)) {
+                loadedClass = findClass(name);
+            }
+            if (loadedClass != null) {
+                record(name, loadedClass);
+            }
+            return loadedClass;
+        }
+    }
+
+    /**
+     * Starts recording which of the classes in this loader's mapped JARs the plugin uses, in
+     * the order of first use. Only classes this loader defines itself are recorded, not those
+     * the parent or a dependency supplied. Classes defined by {@link #preload(Collection)} only count once
+     * the plugin actually asks for them. Has no effect if recording has already started.
+     *
+     * @see #getRecordedClasses()
+     */
+    public synchronized void startRecording() {
+        if (recording == null) {
+            recording = new Recording();
+        }
+    }
+
+    /**
+     * Returns the classes recorded since {@link #startRecording()}, in the order of first use.
+     *
+     * @return the binary class names; empty if recording has not been started
+     */
+    public List<String> getRecordedClasses() {
+        Recording current = recording;
+        return current != null ? List.copyOf(current.order) : Collections.emptyList();
+    }
+
+    private void record(String name, Class<?> loadedClass) {
+        Recording current = recording;
+        if (current != null && loadedClass.getClassLoader() == this && mappedClasses.containsKey(name)
+                && current.seen.add(name)) {
+            current.order.add(name);
+        }
+    }
+
+    /**
+     * Defines the listed classes of this loader's mapped JARs that are not loaded yet, without
+     * initializing them. Each name is looked up the same way {@link #loadClass(String)} would,
+     * so a class the parent or a dependency supplies is not defined again here. Names of
+     * classes this loader does not hold, and classes that cannot be defined, are skipped; the plugin gets the error when it uses such a class. Stops early
+     * when the loader is closed or the calling thread is interrupted.
+     *
+     * @param classNames the binary names of the classes to define, typically a list recorded
+     *                   by {@link #getRecordedClasses()} in an earlier run
+     * @return the number of classes defined
+     */
+    public int preload(Collection<String> classNames) {
+        int defined = 0;
+        for (String name : classNames) {
+            if (closed || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            if (!mappedClasses.containsKey(name)) {
+                continue;
+            }
+            try {
+                synchronized (getClassLoadingLock(name)) {
+                    if (findLoadedClass(name) == null && lookupClass(name).getClassLoader() == this) {
+                        defined++;
+                    }
+                }
+            } catch (ClassNotFoundException | LinkageError e) {
+                // the JAR changed since the list was recorded
+            }
+        }
+        return defined;
+    }
+
+    /**
+     * Defines a class of the plugin JAR or one of its nested libraries from its mapped bytes,
+     * or finds it in the Class-Path entries.
+     *
+     * @param name the binary name of the class
+     * @return the class
+     * @throws ClassNotFoundException if the class cannot be found or read
+     */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        MappedJar jar = closed ? null : mappedClasses.get(name);
+        if (jar != null) {
+            try {
+                ByteBuffer bytes = jar.readClass(name);
+                if (bytes != null) {
+                    definePackageIfNeeded(name, jar);
+                    return defineClass(name, bytes, jar.getCodeSource());
+                }
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+        return super.findClass(name);
+    }
+
+    private void definePackageIfNeeded(String className, MappedJar jar) {
+        String packageName = packageName(className);
+        if (packageName.isEmpty() || getDefinedPackage(packageName) != null) {
+            return;
+        }
+        try {
+            if (jar.getManifest() != null) {
+                definePackage(packageName, jar.getManifest(), jar.getCodeSource().getLocation());
+            } else {
+                definePackage(packageName, null, null, null, null, null, null, null);
+            }
+        } catch (IllegalArgumentException e) {
+            // defined concurrently by another thread loading a class of the same package
+        }
+    }
+
+    /**
+     * Opens a resource, parent first. A resource of the plugin JAR or one of its nested
+     * libraries that the parent does not have is opened directly on the mapping; a stored entry
+     * is streamed from the mapped pages without being copied first. Other names are delegated
+     * as usual.
+     *
+     * @param name the resource name
+     * @return a stream over the resource, or null if it cannot be found or read
+     */
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        ClassLoader parent = getParent();
+        MappedJar jar = findMappedJar(name);
+        if (jar == null || parent == null) {
+            return super.getResourceAsStream(name);
+        }
+        URL parentUrl = parent.getResource(name);
+        try {
+            return parentUrl != null ? parentUrl.openStream() : jar.openResource(name);
+        } catch (IOException e) {
+            log.warn("Failed to read resource {} of {}", name, jarUrl, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the contents of a resource as a read-only buffer, looked up parent first like
+     * {@link #getResource(String)}. A resource stored uncompressed in the plugin JAR or one of
+     * its nested libraries is returned as a view of the mapping, without copying, and can be
+     * handed to a channel as is; a compressed one is inflated into a new buffer. Resources found
+     * elsewhere (the parent or Class-Path entries) are read into a heap buffer.
+     *
+     * @param name the resource name, relative to the root of the JAR and without a leading slash
+     * @return the contents, or null if the resource cannot be found
+     * @throws IOException if the resource cannot be read
+     * @see dev.siea.jonion.Plugin#getResourceBuffer(String)
+     */
+    public ByteBuffer getResourceBuffer(String name) throws IOException {
+        ClassLoader parent = getParent();
+        MappedJar jar = findMappedJar(name);
+        URL url;
+        if (jar != null && parent != null) {
+            url = parent.getResource(name);
+            if (url == null) {
+                return jar.readResource(name);
+            }
+        } else {
+            url = getResource(name);
+            if (url == null) {
+                return null;
+            }
+        }
+        try (InputStream inputStream = url.openStream()) {
+            return ByteBuffer.wrap(inputStream.readAllBytes()).asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Finds a resource in the plugin JAR, then in its nested libraries and the Class-Path entries.
+     *
+     * @param name the resource name
+     * @return a URL for the resource, or null if it cannot be found
+     */
+    @Override
+    public URL findResource(String name) {
+        MappedJar jar = findMappedJar(name);
+        URL url = jar != null ? jar.findResource(name) : null;
+        return url != null ? url : super.findResource(name);
+    }
+
+    /**
+     * Finds all resources with the given name in the plugin JAR, its nested libraries and the
+     * Class-Path entries.
+     *
+     * @param name the resource name
+     * @return the URLs of the resources
+     * @throws IOException if the Class-Path entries cannot be searched
+     */
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        Enumeration<URL> classPathResources = super.findResources(name);
+        if (closed) {
+            return classPathResources;
+        }
+        List<URL> urls = new ArrayList<>();
+        for (MappedJar jar : mappedJars) {
+            URL url = jar.findResource(name);
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+        if (urls.isEmpty()) {
+            return classPathResources;
+        }
+        urls.addAll(Collections.list(classPathResources));
+        return Collections.enumeration(urls);
+    }
+
+    /** Returns the mapped JAR that holds a resource, using the class and resource indexes. */
+    private MappedJar findMappedJar(String name) {
+        if (closed) {
+            return null;
+        }
+        String className = className(name);
+        return className != null ? mappedClasses.get(className) : mappedResources.get(name);
+    }
+
+    /**
+     * Closes the loader. No further classes or resources are loaded from the plugin JAR and
+     * its nested libraries, and the Class-Path JARs are closed. The mapping itself is released
+     * when the loader is garbage collected.
+     *
+     * @throws IOException if a Class-Path JAR cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        super.close();
+    }
+
+    private Class<?> findParentClass(String name) {
+        try {
+            ClassLoader parent = getParent();
+            return parent != null ? parent.loadClass(name) : Class.forName(name, false, null);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Caches a miss. Only done when the index covers all of this loader's sources: JARs do not
+     * change under a loader, while a directory on the Class-Path may gain the class later.
+     */
+    private void rememberMissing(String name) {
+        if (indexComplete) {
+            missingClasses.put(name, Boolean.TRUE);
+        }
+    }
+
+    private static boolean isParentFirst(String name) {
+        for (String prefix : PARENT_FIRST_PREFIXES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The classes recorded since {@link #startRecording()}. */
+    private static final class Recording {
+        private final Set<String> seen = ConcurrentHashMap.newKeySet();
+        private final Queue<String> order = new ConcurrentLinkedQueue<>();
+    }
+
+    /** Access-ordered map of names that could not be found, evicting the least recently used. */
+    private static final class MissingClassCache extends LinkedHashMap<String, Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private MissingClassCache() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > NEGATIVE_CACHE_SIZE;
+        }
+    }
+
+    /** Thrown for classes this loader cannot find; skips filling in the stack trace. */
+    private static final class MissingClassException extends ClassNotFoundException {
+        private static final long serialVersionUID = 1L;
+
+        MissingClassException(String name) {
+            super(name);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,172 @@
+package dev.siea.jonion.loader;
+
+import dev.siea.jonion.archive.MappedZipFile;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * A JAR that {@link CustomClassLoader} reads through a {@link MappedZipFile}: either a plugin
+ * JAR mapped from disk or a library JAR nested inside it.
+ * <p>
+ * Resources are exposed as {@code jar:} URLs, {@code jar:file:/plugins/a.jar!/name} for the
+ * plugin JAR and {@code jar:file:/plugins/a.jar!/lib/b.jar!/name} for a nested one. Their
+ * stream handler is the jar itself, so opening them reads from the mapping and never creates
+ * a {@link JarFile}.
+ * </p>
+ *
+ * @see CustomClassLoader
+ * @see MappedZipFile#of(ByteBuffer)
+ */
+final class MappedJar extends URLStreamHandler {
+    private final MappedZipFile zipFile;
+    private final String urlPrefix;
+    private final CodeSource codeSource;
+    private final Manifest manifest;
+
+    private MappedJar(MappedZipFile zipFile, URL location, String urlPrefix, Manifest manifest) {
+        this.zipFile = zipFile;
+        this.urlPrefix = urlPrefix;
+        this.codeSource = new CodeSource(location, (CodeSigner[]) null);
+        this.manifest = manifest;
+    }
+
+    /**
+     * Wraps a JAR that is already mapped, such as the mapping held by a plugin archive.
+     *
+     * @param zipFile  the reader over the mapped JAR
+     * @param path     the JAR file the reader was mapped from
+     * @param manifest the JAR's manifest, already read by the caller, or null if it has none
+     * @return the mapped JAR
+     * @throws IOException if the path cannot be converted to a URL
+     */
+    static MappedJar open(MappedZipFile zipFile, Path path, Manifest manifest) throws IOException {
+        URL location = path.toUri().toURL();
+        return new MappedJar(zipFile, location, location + "!/", manifest);
+    }
+
+    /**
+     * Reads a JAR stored as an entry of this one. A stored entry is read in place; a deflated
+     * one is inflated into memory once.
+     *
+     * @param entry the entry holding the nested JAR
+     * @return the nested JAR
+     * @throws IOException if the entry cannot be read or is not a valid ZIP file
+     */
+    MappedJar nested(MappedZipFile.Entry entry) throws IOException {
+        MappedZipFile nestedZip = MappedZipFile.of(zipFile.getContent(entry));
+        MappedZipFile.Entry manifestEntry = nestedZip.getEntry(JarFile.MANIFEST_NAME);
+        Manifest nestedManifest = null;
+        if (manifestEntry != null) {
+            try (InputStream inputStream = nestedZip.getInputStream(manifestEntry)) {
+                nestedManifest = new Manifest(inputStream);
+            }
+        }
+        URL location = new URL("jar", "", -1, urlPrefix + entry.getName(), this);
+        return new MappedJar(nestedZip, location, urlPrefix + entry.getName() + "!/", nestedManifest);
+    }
+
+    /** Returns the ZIP reader over this JAR. */
+    MappedZipFile getZipFile() {
+        return zipFile;
+    }
+
+    /** Returns the code source of classes defined from this JAR. */
+    CodeSource getCodeSource() {
+        return codeSource;
+    }
+
+    /** Returns the manifest of this JAR, or null if it has none. */
+    Manifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * Returns the bytes of a class of this JAR.
+     *
+     * @param className the binary name of the class
+     * @return the class file, or null if this JAR has no such class
+     * @throws IOException if the entry cannot be read
+     */
+    ByteBuffer readClass(String className) throws IOException {
+        MappedZipFile.Entry entry = zipFile.getEntry(className.replace('.', '/').concat(".class"));
+        return entry != null ? zipFile.getContent(entry) : null;
+    }
+
+    /**
+     * Returns the contents of a resource of this JAR as a read-only buffer: a view of the
+     * mapping for a stored entry, or a newly inflated buffer for a compressed one.
+     *
+     * @param name the resource name
+     * @return the contents, or null if this JAR has no such entry
+     * @throws IOException if the entry cannot be read
+     */
+    ByteBuffer readResource(String name) throws IOException {
+        MappedZipFile.Entry entry = zipFile.getEntry(name);
+        return entry != null ? zipFile.getContent(entry) : null;
+    }
+
+    /**
+     * Opens a stream over a resource of this JAR.
+     *
+     * @param name the resource name
+     * @return the stream, or null if this JAR has no such entry
+     * @throws IOException if the entry cannot be read
+     */
+    InputStream openResource(String name) throws IOException {
+        MappedZipFile.Entry entry = zipFile.getEntry(name);
+        return entry != null ? zipFile.getInputStream(entry) : null;
+    }
+
+    /**
+     * Returns a URL for a resource of this JAR.
+     *
+     * @param name the resource name
+     * @return the URL, or null if this JAR has no such entry
+     */
+    URL findResource(String name) {
+        try {
+            if (zipFile.getEntry(name) == null) {
+                return null;
+            }
+            return new URL("jar", "", -1, urlPrefix + name, this);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected URLConnection openConnection(URL url) throws IOException {
+        String file = url.getFile();
+        MappedZipFile.Entry entry = file.startsWith(urlPrefix) ? zipFile.getEntry(file.substring(urlPrefix.length())) : null;
+        if (entry == null) {
+            throw new FileNotFoundException(url.toString());
+        }
+        return new URLConnection(url) {
+            @Override
+            public void connect() {
+                connected = true;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return zipFile.getInputStream(entry);
+            }
+
+            @Override
+            public long getContentLengthLong() {
+                return entry.getSize();
+            }
+        };
+    }
+}
@@ -1,24 +1,35 @@
 package dev.siea.jonion.manager;
 
 import dev.siea.jonion.PluginWrapper;
+import dev.siea.jonion.archive.PluginArchive;
 import dev.siea.jonion.configuration.finder.PluginConfigurationFinder;
 import dev.siea.jonion.configuration.finder.YamlConfigurationFinder;
+import dev.siea.jonion.dependency.DependencyGraph;
 import dev.siea.jonion.dependency.PluginDependency;
 import dev.siea.jonion.descriptor.PluginDescriptor;
 import dev.siea.jonion.descriptor.finder.PluginDescriptorFinder;
 import dev.siea.jonion.descriptor.finder.YamlDescriptorFinder;
-import dev.siea.jonion.exceptions.CircularDependencyException;
-import dev.siea.jonion.exceptions.MissingDependencyException;
 import dev.siea.jonion.exceptions.PluginLoadException;
 import dev.siea.jonion.lifecycle.PluginState;
+import dev.siea.jonion.lifecycle.PluginStateListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Flushable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -31,10 +42,21 @@ import java.util.stream.Stream;
  * </p>
  * <ul>
  *   <li>Scanning a plugin directory for JAR files</li>
- *   <li>Finding descriptors and configurations via pluggable finders</li>
+ *   <li>Finding descriptors and configurations via pluggable finders, optionally on several threads</li>
  *   <li>Creating {@link PluginWrapper} instances and sorting by dependencies</li>
- *   <li>Loading plugins and detecting circular or missing dependencies</li>
+ *   <li>Loading plugins and detecting circular or missing dependencies, optionally loading independent plugins concurrently or lazily on first access</li>
+ *   <li>Reloading a single plugin with its dependents, or only the plugins affected by directory changes, optionally driven by a file watcher</li>
+ *   <li>Evicting idle plugins to bound the number of loaded plugins, reloading them transparently on their next access</li>
+ *   <li>Tracking the class loaders released by unloads and evictions to detect those that are never garbage collected</li>
+ *   <li>Recording the classes each plugin uses and preloading them in the background the next time it is loaded</li>
  * </ul>
+ * <p>
+ * The manager is safe for concurrent use. Operations that change the set of plugins
+ * (discovery, loading, unloading, reloading) are serialized on the manager, while the
+ * lookups of {@link PluginManager} read an immutable snapshot of the registry and never
+ * wait for them: {@link #getPlugin(String)} is a lock-free hash lookup that can be called
+ * from any number of threads while a reload is running.
+ * </p>
  *
  * @see PluginManager
  * @see PluginWrapper
@@ -43,10 +65,23 @@ import java.util.stream.Stream;
  */
 public abstract class AbstractPluginManager implements PluginManager {
     protected final Logger logger = LoggerFactory.getLogger(this.getClass());
-    private final List<PluginWrapper> pluginWrappers = new ArrayList<>();
+    private final PluginRegistry registry = new PluginRegistry();
+    private final List<PluginArchive> retainedArchives = new ArrayList<>();
     private final PluginDescriptorFinder descriptorFinder;
     private final PluginConfigurationFinder configurationFinder;
     private final Path pluginDirectory;
+    private final int parallelism;
+    private final boolean lazyActivation;
+    private final PluginStateListener activationListener = this::onPluginActivated;
+    private final Set<PluginWrapper> evictedPlugins = ConcurrentHashMap.newKeySet();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong reactivationCount = new AtomicLong();
+    private final AtomicLong reactivationNanos = new AtomicLong();
+    private final AtomicLong maxReactivationNanos = new AtomicLong();
+    private final ClassLoaderTracker classLoaderTracker = new ClassLoaderTracker();
+    private PluginDirectoryWatcher directoryWatcher;
+    private volatile PluginEvictor evictor;
+    private volatile ClassPreloader classPreloader;
 
     /** Creates a manager that scans the default {@code plugins} directory with YAML descriptor and configuration finders. */
     public AbstractPluginManager() {
@@ -80,7 +115,55 @@ public abstract class AbstractPluginManager implements PluginManager {
      * @param configurationFinder  the finder used to locate plugin configuration files
      */
     public AbstractPluginManager(Path directory, PluginDescriptorFinder descriptorFinder, PluginConfigurationFinder configurationFinder) {
+        this(directory, descriptorFinder, configurationFinder, 1);
+    }
+
+    /**
+     * Creates a manager with custom descriptor and configuration finders that reads plugin
+     * descriptors and loads plugins on up to {@code parallelism} threads.
+     * <p>
+     * Discovery results are registered in the sorted order of the JAR paths regardless of which
+     * thread finished first, so duplicate-ID resolution stays deterministic. Plugins are loaded
+     * concurrently wherever the dependency graph allows; a plugin is always loaded after its
+     * dependencies. The descriptor finder must be safe for concurrent use when
+     * {@code parallelism} is greater than one (the built-in finders are stateless).
+     * </p>
+     *
+     * @param directory             the path to the plugin directory (created if it does not exist)
+     * @param descriptorFinder     the finder used to read plugin descriptors from JARs
+     * @param configurationFinder  the finder used to locate plugin configuration files
+     * @param parallelism           the maximum number of JARs read or plugins loaded concurrently; {@code 1} works sequentially
+     * @throws IllegalArgumentException if {@code parallelism} is less than one
+     */
+    public AbstractPluginManager(Path directory, PluginDescriptorFinder descriptorFinder, PluginConfigurationFinder configurationFinder, int parallelism) {
+        this(directory, descriptorFinder, configurationFinder, parallelism, false);
+    }
+
+    /**
+     * Creates a manager with custom finders and a choice between eager and lazy activation.
+     * <p>
+     * With lazy activation, discovered plugins whose dependencies resolve are left
+     * {@link PluginState#RESOLVED}: no class loader is created and no plugin class is
+     * instantiated until the plugin, or a plugin that depends on it, is first accessed through
+     * {@link PluginWrapper#getPlugin()} or {@link PluginWrapper#activate()}. Processes that use
+     * only a few of the installed plugins then skip the class loading cost of the rest.
+     * </p>
+     *
+     * @param directory             the path to the plugin directory (created if it does not exist)
+     * @param descriptorFinder     the finder used to read plugin descriptors from JARs
+     * @param configurationFinder  the finder used to locate plugin configuration files
+     * @param parallelism           the maximum number of JARs read or plugins loaded concurrently; {@code 1} works sequentially
+     * @param lazyActivation        true to load plugins on first access instead of during discovery
+     * @throws IllegalArgumentException if {@code parallelism} is less than one
+     * @see #AbstractPluginManager(Path, PluginDescriptorFinder, PluginConfigurationFinder, int)
+     */
+    public AbstractPluginManager(Path directory, PluginDescriptorFinder descriptorFinder, PluginConfigurationFinder configurationFinder, int parallelism, boolean lazyActivation) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, was " + parallelism);
+        }
         pluginDirectory = directory;
+        this.parallelism = parallelism;
+        this.lazyActivation = lazyActivation;
 
         if (!Files.exists(pluginDirectory)) {
             try {
@@ -96,64 +179,380 @@ public abstract class AbstractPluginManager implements PluginManager {
         loadPlugins();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The returned list is an unmodifiable view of the registry in registration order.
+     * </p>
+     */
     @Override
     public List<PluginWrapper> getPlugins() {
-        return pluginWrappers;
+        return registry.getPlugins();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Answered from a per-state index; the returned unmodifiable list is reused until a plugin
+     * enters or leaves the state.
+     * </p>
+     */
     @Override
     public List<PluginWrapper> getPlugins(PluginState state) {
-        return pluginWrappers.stream()
-                .filter(pluginWrapper -> pluginWrapper.getState() == state)
-                .collect(Collectors.toList());
+        return registry.getPlugins(state);
+    }
+
+    /**
+     * Returns the number of plugins currently in the given state without creating a list.
+     *
+     * @param state the state to count
+     * @return the number of plugins in that state
+     */
+    public int getPluginCount(PluginState state) {
+        return registry.count(state);
     }
 
     @Override
     public PluginWrapper getPlugin(String pluginId) {
-        return pluginWrappers.stream()
-                .filter(pluginWrapper -> pluginWrapper.getPluginDescriptor().getPluginId().equals(pluginId))
-                .findFirst()
-                .orElse(null);
+        return registry.getPlugin(pluginId);
+    }
+
+    /**
+     * Returns the dependency graph of the registered plugins, with their load order, the
+     * plugins that cannot be loaded because of missing or circular dependencies, and a
+     * reverse-dependency index. The graph is cached until plugins are added or removed.
+     *
+     * @return the resolved dependency graph; never null
+     */
+    public DependencyGraph getDependencyGraph() {
+        return registry.getDependencyGraph();
+    }
+
+    /** Returns the maximum number of threads this manager uses for plugin discovery and loading. */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /** Returns whether plugins are loaded on first access rather than during discovery. */
+    public boolean isLazyActivation() {
+        return lazyActivation;
     }
 
     /**
      * Scans the plugin directory for JAR files and creates a {@link PluginWrapper} for each.
-     * Duplicate plugin IDs and paths without a valid descriptor are skipped (and logged).
+     * JARs are processed in sorted path order; when {@link #getParallelism() parallelism} is
+     * greater than one their descriptors are read concurrently. The wrappers are registered
+     * afterwards in that same order, as a single batch. Duplicate plugin IDs and paths without a valid descriptor are skipped
+     * (and logged). Afterwards a descriptor finder that implements {@link Flushable}
+     * (such as {@link dev.siea.jonion.descriptor.finder.IndexedDescriptorFinder}) is flushed.
      */
-    protected void createPluginWrappers() {
+    protected synchronized void createPluginWrappers() {
+        List<Path> jarPaths = scanPluginDirectory();
+        if (jarPaths != null) {
+            createPluginWrappers(jarPaths);
+        }
+    }
+
+    private List<Path> scanPluginDirectory() {
         try (Stream<Path> paths = Files.walk(pluginDirectory)) {
-            paths.filter(Files::isRegularFile)
+            return paths.filter(Files::isRegularFile)
                     .filter(path -> path.toString().endsWith(".jar"))
-                    .forEach(this::createPluginWrapperFromPath);
+                    .sorted()
+                    .collect(Collectors.toList());
         } catch (Exception e) {
             logger.error("Error while creating plugin wrappers", e);
+            return null;
         }
     }
 
-    private void loadPlugins() {
-        List<PluginWrapper> sortedPlugins = sortPluginsByDependencies(pluginWrappers);
-        sortedPlugins.forEach(pluginWrapper -> {
-            if (pluginWrapper.getState() != PluginState.CREATED) {
-                return;
+    private void createPluginWrappers(List<Path> jarPaths) {
+        List<PluginArchive> archives = jarPaths.stream()
+                .map(path -> new PluginArchive(path).retain())
+                .collect(Collectors.toList());
+        List<PluginDescriptor> descriptors;
+        if (parallelism == 1 || archives.size() < 2) {
+            descriptors = new ArrayList<>(archives.size());
+            archives.forEach(archive -> descriptors.add(findPluginDescriptor(archive)));
+        } else {
+            descriptors = findPluginDescriptors(archives);
+        }
+        List<PluginWrapper> pluginWrappers = new ArrayList<>(archives.size());
+        for (int i = 0; i < archives.size(); i++) {
+            PluginWrapper pluginWrapper = createPluginWrapper(archives.get(i), descriptors.get(i));
+            if (pluginWrapper != null) {
+                pluginWrappers.add(pluginWrapper);
             }
+        }
+        registerPluginWrappers(pluginWrappers);
+
+        flushDescriptorFinder();
+    }
+
+    private void flushDescriptorFinder() {
+        if (descriptorFinder instanceof Flushable flushable) {
             try {
-                pluginWrapper.load();
-                logger.debug("Loaded plugin: {}", pluginWrapper.getPluginDescriptor().getPluginId());
-            } catch (PluginLoadException e) {
-                logger.error("Failed to load plugin: {}", pluginWrapper.getPluginDescriptor().getPluginId(), e);
+                flushable.flush();
+            } catch (IOException e) {
+                logger.warn("Failed to persist descriptor finder state", e);
             }
-        });
+        }
     }
 
-    /** Unloads all currently loaded plugins and clears the internal list of wrappers. */
-    protected void unloadPlugins() {
-        pluginWrappers.forEach(pluginWrapper -> {
-            if (pluginWrapper.getState() == PluginState.LOADED) {
-                pluginWrapper.unload();
+    private List<PluginDescriptor> findPluginDescriptors(List<PluginArchive> archives) {
+        List<Callable<PluginDescriptor>> tasks = new ArrayList<>(archives.size());
+        for (PluginArchive archive : archives) {
+            tasks.add(() -> findPluginDescriptor(archive));
+        }
+
+        List<PluginDescriptor> descriptors = new ArrayList<>(archives.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, archives.size()), new NamedThreadFactory("jonion-discovery"));
+        try {
+            for (Future<PluginDescriptor> future : executor.invokeAll(tasks)) {
+                descriptors.add(future.get());
             }
-        });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while discovering plugins; remaining JARs are skipped");
+        } catch (ExecutionException e) {
+            logger.error("Error while discovering plugins", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        while (descriptors.size() < archives.size()) {
+            descriptors.add(null);
+        }
+        return descriptors;
+    }
+
+    private PluginDescriptor findPluginDescriptor(PluginArchive archive) {
+        try {
+            return descriptorFinder.findPluginDescriptor(archive);
+        } catch (RuntimeException e) {
+            logger.error("DescriptionFinder failed for path: {}", archive.getPath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Loads every {@link PluginState#CREATED} plugin in dependency order. A plugin whose
+     * required dependency did not end up {@link PluginState#LOADED} is marked
+     * {@link PluginState#FAILED} without being attempted. When
+     * {@link #getParallelism() parallelism} is greater than one, independent plugins are
+     * loaded concurrently: each plugin is scheduled as soon as all of its dependencies are
+     * done, so the load proceeds in waves along the dependency graph. With
+     * {@link #isLazyActivation() lazy activation} plugins are only marked
+     * {@link PluginState#RESOLVED} and loaded on first access.
+     */
+    private void loadPlugins() {
+        DependencyGraph graph = registry.getDependencyGraph();
+        List<PluginWrapper> sortedPlugins = resolveLoadOrder(graph);
+        if (lazyActivation) {
+            sortedPlugins.forEach(this::resolvePlugin);
+        } else if (parallelism == 1 || sortedPlugins.size() < 2) {
+            sortedPlugins.forEach(this::loadPlugin);
+        } else {
+            loadPluginsConcurrently(graph, sortedPlugins);
+        }
+        releaseArchives();
+    }
+
+    private void loadPluginsConcurrently(DependencyGraph graph, List<PluginWrapper> sortedPlugins) {
+        Map<String, CompletableFuture<Boolean>> results = new HashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, sortedPlugins.size()), new NamedThreadFactory("jonion-loader"));
+        try {
+            for (PluginWrapper pluginWrapper : sortedPlugins) {
+                List<CompletableFuture<Boolean>> dependencies = new ArrayList<>();
+                for (String dependencyId : graph.getDependencies(pluginWrapper.getPluginDescriptor().getPluginId())) {
+                    CompletableFuture<Boolean> result = results.get(dependencyId);
+                    if (result != null) {
+                        dependencies.add(result);
+                    }
+                }
+                CompletableFuture<Boolean> result = CompletableFuture
+                        .allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+                        .thenApplyAsync(ignored -> loadPlugin(pluginWrapper), executor);
+                results.put(pluginWrapper.getPluginDescriptor().getPluginId(), result);
+            }
+            CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Loads a single plugin whose dependencies have already been processed.
+     *
+     * @return true if the plugin is loaded afterwards
+     */
+    private boolean loadPlugin(PluginWrapper pluginWrapper) {
+        if (pluginWrapper.getState() != PluginState.CREATED) {
+            return pluginWrapper.getState() == PluginState.LOADED;
+        }
+        String pluginId = pluginWrapper.getPluginDescriptor().getPluginId();
+        String missingDependency = findUnavailableDependency(pluginWrapper);
+        if (missingDependency != null) {
+            logger.error("Skipping plugin {}: required dependency {} is not loaded", pluginId, missingDependency);
+            pluginWrapper.compareAndSetState(PluginState.CREATED, PluginState.FAILED);
+            return false;
+        }
+        try {
+            pluginWrapper.load();
+            logger.debug("Loaded plugin: {}", pluginId);
+            onPluginLoaded(pluginWrapper);
+        } catch (PluginLoadException e) {
+            logger.error("Failed to load plugin: {}", pluginId, e);
+        } catch (RuntimeException e) {
+            logger.error("Error after loading plugin: {}", pluginId, e);
+        }
+        return pluginWrapper.getState() == PluginState.LOADED;
+    }
+
+    /**
+     * Marks a plugin whose dependencies have already been processed as
+     * {@link PluginState#RESOLVED} for lazy activation.
+     */
+    private void resolvePlugin(PluginWrapper pluginWrapper) {
+        if (pluginWrapper.getState() != PluginState.CREATED) {
+            return;
+        }
+        String missingDependency = findUnavailableDependency(pluginWrapper);
+        if (missingDependency != null) {
+            logger.error("Skipping plugin {}: required dependency {} is not resolved", pluginWrapper.getPluginDescriptor().getPluginId(), missingDependency);
+            pluginWrapper.compareAndSetState(PluginState.CREATED, PluginState.FAILED);
+        } else {
+            pluginWrapper.compareAndSetState(PluginState.CREATED, PluginState.RESOLVED);
+        }
+    }
 
-        pluginWrappers.clear();
+    /**
+     * Returns the ID of the first required dependency that is neither loaded nor resolved for
+     * lazy activation, or {@code null} if all of them are.
+     */
+    private String findUnavailableDependency(PluginWrapper pluginWrapper) {
+        for (PluginDependency dependency : pluginWrapper.getPluginDescriptor().getDependencies()) {
+            PluginWrapper dependencyPlugin = getPlugin(dependency.getPluginId());
+            PluginState state = dependencyPlugin != null ? dependencyPlugin.getState() : null;
+            if (!dependency.isOptional() && state != PluginState.LOADED && state != PluginState.RESOLVED) {
+                return dependency.getPluginId();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the classes each plugin uses from the time it is loaded and, the next time it is
+     * loaded, defines them on background threads while the manager goes on loading and
+     * starting plugins, so they are ready by the time the plugin needs them.
+     * <p>
+     * The list is saved next to the plugin JAR as {@code <jar>.preload} when the plugin is
+     * unloaded or evicted, or on {@link #saveClassPreloadLists()}; a list recorded for a
+     * different version of the JAR is ignored. Preloading only defines classes and never
+     * initializes them, so it runs no plugin code. Up to {@link #getParallelism()} plugins are
+     * preloaded at the same time.
+     * </p>
+     * <p>
+     * Plugins that are already loaded, such as those loaded by the constructor, start
+     * recording now and have their saved lists replayed right away, so calling this before
+     * starting the plugins still warms them up.
+     * </p>
+     *
+     * @see dev.siea.jonion.loader.CustomClassLoader#preload(java.util.Collection)
+     */
+    public synchronized void enableClassPreloading() {
+        if (classPreloader != null) {
+            return;
+        }
+        classPreloader = new ClassPreloader(parallelism);
+        registry.getPlugins(PluginState.LOADED).forEach(classPreloader::pluginLoaded);
+    }
+
+    /** Stops preloading classes and saving class lists; preloads in progress are abandoned. */
+    public synchronized void disableClassPreloading() {
+        if (classPreloader != null) {
+            classPreloader.close();
+            classPreloader = null;
+        }
+    }
+
+    /**
+     * Saves the classes recorded so far for every loaded plugin, for hosts that do not unload
+     * their plugins before exiting. Does nothing unless {@link #enableClassPreloading()} was called.
+     */
+    public synchronized void saveClassPreloadLists() {
+        registry.getPlugins(PluginState.LOADED).forEach(this::saveClassPreloadList);
+    }
+
+    private void saveClassPreloadList(PluginWrapper pluginWrapper) {
+        ClassPreloader preloader = classPreloader;
+        if (preloader != null) {
+            preloader.save(pluginWrapper);
+        }
+    }
+
+    private void onPluginActivated(PluginWrapper pluginWrapper, PluginState oldState, PluginState newState) {
+        if (newState == PluginState.LOADED) {
+            ClassPreloader preloader = classPreloader;
+            if (preloader != null) {
+                preloader.pluginLoaded(pluginWrapper);
+            }
+        }
+        if (oldState != PluginState.RESOLVED || newState != PluginState.LOADED) {
+            return;
+        }
+        logger.debug("Activated plugin: {}", pluginWrapper.getPluginDescriptor().getPluginId());
+        if (evictedPlugins.remove(pluginWrapper)) {
+            long nanos = pluginWrapper.getLoadTime().toNanos();
+            reactivationCount.incrementAndGet();
+            reactivationNanos.addAndGet(nanos);
+            maxReactivationNanos.accumulateAndGet(nanos, Math::max);
+        }
+        PluginEvictor currentEvictor = evictor;
+        if (currentEvictor != null && registry.count(PluginState.LOADED) > currentEvictor.getMaxResident()) {
+            currentEvictor.requestPass();
+        }
+        try {
+            onPluginLoaded(pluginWrapper);
+        } catch (RuntimeException e) {
+            logger.error("Error after activating plugin: {}", pluginWrapper.getPluginDescriptor().getPluginId(), e);
+        }
+    }
+
+    private void releaseArchives() {
+        retainedArchives.forEach(PluginArchive::release);
+        retainedArchives.clear();
+    }
+
+    /**
+     * Called after a plugin has been loaded successfully, both during the initial load and
+     * after any reload. The default implementation does nothing; subclasses use it to bring
+     * reloaded plugins back into their lifecycle (e.g. start them). Dependents of the plugin
+     * are loaded only after this method returns. When {@link #getParallelism() parallelism}
+     * is greater than one it is called on loader threads, concurrently for independent
+     * plugins, while the thread that triggered the load holds the manager's lock. When a
+     * plugin is activated on access (with {@link #isLazyActivation() lazy activation} or after
+     * it was {@link #enableEviction(Duration, int) evicted}), it is called on the accessing
+     * thread without the manager's lock.
+     *
+     * @param pluginWrapper the wrapper that is now {@link PluginState#LOADED}
+     */
+    protected void onPluginLoaded(PluginWrapper pluginWrapper) {
+    }
+
+    /**
+     * Called right before a loaded plugin is unloaded. The default implementation does
+     * nothing; subclasses use it to take the plugin out of their lifecycle (e.g. stop it).
+     *
+     * @param pluginWrapper the wrapper that is about to be unloaded
+     */
+    protected void onPluginUnloading(PluginWrapper pluginWrapper) {
+    }
+
+    /** Unloads all currently loaded plugins and clears the internal list of wrappers. */
+    protected synchronized void unloadPlugins() {
+        registry.getPlugins().forEach(this::unloadWrapper);
+
+        registry.clear();
     }
 
     /**
@@ -161,81 +560,441 @@ public abstract class AbstractPluginManager implements PluginManager {
      *
      * @param pluginId the ID of the plugin to unload
      */
-    protected void unloadPlugin(String pluginId) {
+    protected synchronized void unloadPlugin(String pluginId) {
         PluginWrapper pluginWrapper = getPlugin(pluginId);
         if (pluginWrapper != null) {
-            pluginWrapper.unload();
-            pluginWrappers.remove(pluginWrapper);
+            unloadWrapper(pluginWrapper);
+            registry.removeAll(List.of(pluginWrapper));
+        }
+    }
+
+    private void unloadWrapper(PluginWrapper pluginWrapper) {
+        if (pluginWrapper.getState() == PluginState.LOADED) {
+            saveClassPreloadList(pluginWrapper);
+            onPluginUnloading(pluginWrapper);
+        }
+        ClassLoader classLoader = pluginWrapper.getClassLoader();
+        pluginWrapper.unload();
+        trackReleased(pluginWrapper, classLoader);
+        evictedPlugins.remove(pluginWrapper);
+    }
+
+    private void trackReleased(PluginWrapper pluginWrapper, ClassLoader classLoader) {
+        if (classLoader != null) {
+            classLoaderTracker.track(pluginWrapper.getPluginDescriptor().getPluginId(), classLoader);
         }
     }
 
+    /**
+     * Reports the plugin class loaders that were released by an unload, reload or eviction at
+     * least {@code minAge} ago and have not been garbage collected since. Each of them keeps
+     * all classes of its plugin in memory, usually because something outside the plugin still
+     * references one of its classes or instances.
+     * <p>
+     * Loaders are closed when they are released, so a leaked loader holds no open files, but
+     * it can only be reclaimed by the garbage collector. Choose {@code minAge} long enough to
+     * span several collections.
+     * </p>
+     *
+     * @param minAge how long ago a loader must have been released to be reported
+     * @return the leak report
+     * @see ClassLoaderLeakReport
+     */
+    public ClassLoaderLeakReport getClassLoaderLeaks(Duration minAge) {
+        return classLoaderTracker.report(minAge);
+    }
+
     /** Unloads all plugins, rescans the plugin directory, and loads plugins again in dependency order. */
-    protected void reloadPlugins() {
+    protected synchronized void reloadPlugins() {
         unloadPlugins();
         createPluginWrappers();
         loadPlugins();
     }
 
-    private List<PluginWrapper> sortPluginsByDependencies(List<PluginWrapper> plugins) {
-        Map<String, PluginWrapper> pluginMap = plugins.stream()
-                .collect(Collectors.toMap(p -> p.getPluginDescriptor().getPluginId(), p -> p));
-        List<PluginWrapper> sortedPlugins = new ArrayList<>();
-        Set<String> visited = new HashSet<>();
+    /**
+     * Reloads a single plugin from its JAR, together with every plugin that (transitively)
+     * depends on it, while all other plugins stay loaded.
+     * <p>
+     * The affected plugins are unloaded dependents first, their JARs are read again and they
+     * are loaded in dependency order, so a replaced JAR takes effect without a full
+     * {@link #reloadPlugins() reload}. If the plugin's JAR no longer exists, the plugin is
+     * removed and its required dependents fail to load.
+     * </p>
+     *
+     * @param pluginId the ID of the plugin to reload
+     * @return true if the plugin was registered and has been reloaded
+     * @see #reloadChangedPlugins()
+     */
+    public synchronized boolean reloadPlugin(String pluginId) {
+        PluginWrapper pluginWrapper = getPlugin(pluginId);
+        if (pluginWrapper == null) {
+            return false;
+        }
 
-        for (PluginWrapper plugin : plugins) {
-            try {
-                visit(plugin, pluginMap, sortedPlugins, visited, new HashSet<>());
-            } catch (CircularDependencyException | MissingDependencyException e) {
-                logger.error(e.getMessage());
-                plugin.setState(PluginState.FAILED);
+        DependencyGraph graph = registry.getDependencyGraph();
+        Set<PluginWrapper> dependents = collectDependents(graph, Set.of(pluginId));
+        Set<PluginWrapper> toUnload = new LinkedHashSet<>();
+        toUnload.add(pluginWrapper);
+        toUnload.addAll(dependents);
+        unloadDependentsFirst(graph, toUnload);
+
+        createPluginWrappers(sortedPaths(toUnload.stream()
+                .map(PluginWrapper::getPath)
+                .filter(Files::isRegularFile)
+                .collect(Collectors.toList())));
+        loadPlugins();
+        logger.info("Reloaded plugin {} and {} dependents.", pluginId, dependents.size());
+        return true;
+    }
+
+    /**
+     * Reloads only what changed in the plugin directory since the plugins were discovered,
+     * leaving every unaffected plugin loaded.
+     * <p>
+     * The directory is compared with the current wrappers: JARs that are new are added, JARs
+     * that disappeared are removed, and JARs whose size or modification time changed are
+     * reloaded. Plugins that (transitively) depend on a removed or changed plugin are unloaded
+     * first, dependents before their dependencies, and loaded again afterwards; plugins that
+     * previously failed because a dependency was missing are retried when a new JAR supplies
+     * it.
+     * </p>
+     *
+     * @see #watchPluginDirectory(Duration)
+     */
+    protected synchronized void reloadChangedPlugins() {
+        List<Path> jarPaths = scanPluginDirectory();
+        if (jarPaths == null) {
+            return;
+        }
+
+        Map<Path, PluginWrapper> knownPlugins = new HashMap<>();
+        registry.getPlugins().forEach(pluginWrapper -> knownPlugins.put(normalize(pluginWrapper.getPath()), pluginWrapper));
+
+        List<Path> addedPaths = new ArrayList<>();
+        Set<PluginWrapper> stalePlugins = new LinkedHashSet<>();
+        Set<Path> presentPaths = new HashSet<>();
+        for (Path path : jarPaths) {
+            Path key = normalize(path);
+            presentPaths.add(key);
+            PluginWrapper pluginWrapper = knownPlugins.get(key);
+            if (pluginWrapper == null) {
+                addedPaths.add(path);
+            } else if (pluginWrapper.getPluginArchive().isModified()) {
+                stalePlugins.add(pluginWrapper);
             }
         }
+        int changedCount = stalePlugins.size();
+        knownPlugins.forEach((key, pluginWrapper) -> {
+            if (!presentPaths.contains(key)) {
+                stalePlugins.add(pluginWrapper);
+            }
+        });
 
-        return sortedPlugins;
+        if (addedPaths.isEmpty() && stalePlugins.isEmpty()) {
+            logger.debug("No plugin changes detected in {}", pluginDirectory);
+            return;
+        }
+
+        DependencyGraph graph = registry.getDependencyGraph();
+        Set<PluginWrapper> dependents = collectDependents(graph, pluginIds(stalePlugins));
+        dependents.removeAll(stalePlugins);
+        Set<PluginWrapper> toUnload = new LinkedHashSet<>(stalePlugins);
+        toUnload.addAll(dependents);
+        unloadDependentsFirst(graph, toUnload);
+
+        List<Path> rediscover = new ArrayList<>(addedPaths);
+        toUnload.stream()
+                .map(PluginWrapper::getPath)
+                .filter(path -> presentPaths.contains(normalize(path)))
+                .forEach(rediscover::add);
+        Set<String> knownIds = pluginIds(registry.getPlugins());
+        createPluginWrappers(sortedPaths(rediscover));
+
+        // Retry plugins that failed earlier because a dependency was missing and is now present.
+        Set<String> newIds = pluginIds(registry.getPlugins());
+        newIds.removeAll(knownIds);
+        List<PluginWrapper> retry = collectDependents(registry.getDependencyGraph(), newIds).stream()
+                .filter(pluginWrapper -> pluginWrapper.getState() == PluginState.FAILED)
+                .collect(Collectors.toList());
+        if (!retry.isEmpty()) {
+            registry.removeAll(retry);
+            createPluginWrappers(sortedPaths(retry.stream().map(PluginWrapper::getPath).collect(Collectors.toList())));
+        }
+
+        loadPlugins();
+        logger.info("Reloaded plugin changes: {} added, {} changed, {} removed, {} dependents reloaded, {} retried.",
+                addedPaths.size(), changedCount, stalePlugins.size() - changedCount, dependents.size(), retry.size());
     }
 
-    private void visit(PluginWrapper plugin, Map<String, PluginWrapper> pluginMap, List<PluginWrapper> sortedPlugins, Set<String> visited, Set<String> stack) throws CircularDependencyException, MissingDependencyException {
-        String pluginId = plugin.getPluginDescriptor().getPluginId();
-        if (visited.contains(pluginId)) {
-            return;
+    /**
+     * Starts watching the plugin directory and its subdirectories for JAR changes, calling
+     * {@link #reloadChangedPlugins()} once no further file events arrived for the given
+     * debounce window. Copying several JARs at once therefore results in a single reload.
+     * Replaces any watcher started earlier.
+     *
+     * @param debounce how long the directory must stay quiet before changes are applied
+     * @throws IOException if the directory cannot be watched
+     */
+    public synchronized void watchPluginDirectory(Duration debounce) throws IOException {
+        stopWatchingPluginDirectory();
+        directoryWatcher = new PluginDirectoryWatcher(pluginDirectory, debounce, this::applyDirectoryChanges);
+        directoryWatcher.start();
+    }
+
+    /**
+     * Runs {@link #reloadChangedPlugins()} for the watcher, unless watching was stopped while
+     * the callback waited for the manager. After a shutdown the registry is empty, so a late
+     * reload would load the whole directory again.
+     */
+    private synchronized void applyDirectoryChanges() {
+        if (directoryWatcher != null) {
+            reloadChangedPlugins();
         }
-        if (stack.contains(pluginId)) {
-            throw new CircularDependencyException("Circular dependency detected: " + pluginId);
+    }
+
+    /** Stops watching the plugin directory; does nothing if no watcher is running. */
+    public synchronized void stopWatchingPluginDirectory() {
+        if (directoryWatcher != null) {
+            directoryWatcher.close();
+            directoryWatcher = null;
         }
-        stack.add(pluginId);
-        for (PluginDependency dependency : plugin.getPluginDescriptor().getDependencies()) {
-            PluginWrapper dependencyPlugin = pluginMap.get(dependency.getPluginId());
-            if (dependencyPlugin != null) {
-                visit(dependencyPlugin, pluginMap, sortedPlugins, visited, stack);
-            } else if (!dependency.isOptional()) {
-                throw new MissingDependencyException("Missing required dependency: " + dependency.getPluginId());
+    }
+
+    /**
+     * Starts evicting idle plugins on a background thread, replacing any eviction policy set
+     * earlier.
+     * <p>
+     * Only loaded plugins that no other loaded plugin depends on are evicted: the plugin is
+     * taken out of the lifecycle through {@link #onPluginUnloading(PluginWrapper)} and
+     * {@link PluginWrapper#deactivate(Runnable) deactivated}, which drops its instance and class loader
+     * but keeps the wrapper and descriptor registered in {@link PluginState#RESOLVED}. The next
+     * {@link PluginWrapper#getPlugin()} loads it again. Plugins are evicted least recently
+     * accessed first: every plugin idle for longer than {@code maxIdleTime}, and then as many
+     * more as needed to get back to {@code maxResident} loaded plugins. Since access is
+     * tracked through {@link PluginWrapper#getPlugin()}, hosts should look the instance up
+     * through the wrapper rather than keep it.
+     * </p>
+     *
+     * @param maxIdleTime how long a plugin may go without access before it is evicted
+     * @param maxResident the maximum number of plugins that stay loaded ({@link Integer#MAX_VALUE} for no limit)
+     * @throws IllegalArgumentException if {@code maxIdleTime} is not positive or {@code maxResident} is negative
+     * @see #getEvictionStats()
+     */
+    public synchronized void enableEviction(Duration maxIdleTime, int maxResident) {
+        if (maxIdleTime.isZero() || maxIdleTime.isNegative()) {
+            throw new IllegalArgumentException("Idle time must be positive, was " + maxIdleTime);
+        }
+        if (maxResident < 0) {
+            throw new IllegalArgumentException("Resident limit must not be negative, was " + maxResident);
+        }
+        disableEviction();
+        evictor = new PluginEvictor(maxIdleTime, maxResident, this::evictIdlePlugins);
+        evictor.start();
+        evictor.requestPass();
+    }
+
+    /** Stops evicting idle plugins; evicted plugins stay resolved until they are accessed. */
+    public synchronized void disableEviction() {
+        if (evictor != null) {
+            evictor.close();
+            evictor = null;
+        }
+    }
+
+    /**
+     * Runs an eviction pass now with the policy set by {@link #enableEviction(Duration, int)}.
+     * Does nothing if eviction is not enabled.
+     *
+     * @return the number of plugins evicted
+     */
+    public synchronized int evictIdlePlugins() {
+        PluginEvictor currentEvictor = evictor;
+        if (currentEvictor == null) {
+            return 0;
+        }
+        DependencyGraph graph = registry.getDependencyGraph();
+        long now = System.nanoTime();
+        int evicted = 0;
+        boolean progressed = true;
+        // Evicting a plugin can make its dependencies evictable, so repeat until nothing changes.
+        while (progressed) {
+            progressed = false;
+            List<PluginWrapper> candidates = new ArrayList<>();
+            for (PluginWrapper pluginWrapper : registry.getPlugins(PluginState.LOADED)) {
+                if (!hasLoadedDependent(graph, pluginWrapper)) {
+                    candidates.add(pluginWrapper);
+                }
+            }
+            candidates.sort(Comparator.comparingLong(PluginWrapper::getLastAccessNanos));
+
+            int excess = registry.count(PluginState.LOADED) - currentEvictor.getMaxResident();
+            for (PluginWrapper pluginWrapper : candidates) {
+                boolean idle = now - pluginWrapper.getLastAccessNanos() >= currentEvictor.getMaxIdleNanos();
+                if (!idle && excess <= 0) {
+                    break;
+                }
+                if (evict(pluginWrapper)) {
+                    evicted++;
+                    excess--;
+                    progressed = true;
+                }
+            }
+        }
+        if (evicted > 0) {
+            logger.debug("Evicted {} idle plugins; {} remain loaded.", evicted, registry.count(PluginState.LOADED));
+        }
+        return evicted;
+    }
+
+    /** Returns a snapshot of the eviction and reactivation metrics. */
+    public EvictionStats getEvictionStats() {
+        return new EvictionStats(evictionCount.get(), reactivationCount.get(), reactivationNanos.get(), maxReactivationNanos.get());
+    }
+
+    private boolean hasLoadedDependent(DependencyGraph graph, PluginWrapper pluginWrapper) {
+        for (String dependentId : graph.getDependents(pluginWrapper.getPluginDescriptor().getPluginId())) {
+            PluginWrapper dependent = getPlugin(dependentId);
+            if (dependent != null && dependent.getState() == PluginState.LOADED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean evict(PluginWrapper pluginWrapper) {
+        saveClassPreloadList(pluginWrapper);
+        ClassLoader[] classLoader = new ClassLoader[1];
+        // Stopping and deactivating under the wrapper's lock keeps a concurrent activation from
+        // slipping in between, which would leave a stopped plugin loaded.
+        boolean deactivated = pluginWrapper.deactivate(() -> {
+            classLoader[0] = pluginWrapper.getClassLoader();
+            try {
+                onPluginUnloading(pluginWrapper);
+            } catch (RuntimeException e) {
+                logger.error("Error before evicting plugin: {}", pluginWrapper.getPluginDescriptor().getPluginId(), e);
+            }
+        });
+        if (!deactivated) {
+            return false;
+        }
+        trackReleased(pluginWrapper, classLoader[0]);
+        evictedPlugins.add(pluginWrapper);
+        evictionCount.incrementAndGet();
+        logger.debug("Evicted idle plugin: {}", pluginWrapper.getPluginDescriptor().getPluginId());
+        return true;
+    }
+
+    private Set<PluginWrapper> collectDependents(DependencyGraph graph, Set<String> pluginIds) {
+        Set<String> dependentIds = graph.getTransitiveDependents(pluginIds);
+        Set<PluginWrapper> dependents = new LinkedHashSet<>();
+        for (PluginWrapper pluginWrapper : registry.getPlugins()) {
+            if (dependentIds.contains(pluginWrapper.getPluginDescriptor().getPluginId())) {
+                dependents.add(pluginWrapper);
+            }
+        }
+        return dependents;
+    }
+
+    private void unloadDependentsFirst(DependencyGraph graph, Set<PluginWrapper> plugins) {
+        Map<String, PluginWrapper> remaining = new HashMap<>();
+        plugins.forEach(pluginWrapper -> remaining.put(pluginWrapper.getPluginDescriptor().getPluginId(), pluginWrapper));
+        List<String> loadOrder = graph.getLoadOrder();
+        for (int i = loadOrder.size() - 1; i >= 0 && !remaining.isEmpty(); i--) {
+            PluginWrapper pluginWrapper = remaining.remove(loadOrder.get(i));
+            if (pluginWrapper != null) {
+                unloadWrapper(pluginWrapper);
             }
         }
-        stack.remove(pluginId);
-        visited.add(pluginId);
-        sortedPlugins.add(plugin);
+        // Plugins with unresolvable dependencies were never loaded; their order does not matter.
+        plugins.stream()
+                .filter(pluginWrapper -> remaining.containsKey(pluginWrapper.getPluginDescriptor().getPluginId()))
+                .forEach(this::unloadWrapper);
+        registry.removeAll(plugins);
+    }
+
+    private static Set<String> pluginIds(Collection<PluginWrapper> plugins) {
+        Set<String> ids = new HashSet<>();
+        plugins.forEach(pluginWrapper -> ids.add(pluginWrapper.getPluginDescriptor().getPluginId()));
+        return ids;
+    }
+
+    private static List<Path> sortedPaths(Collection<Path> paths) {
+        return paths.stream().sorted().collect(Collectors.toList());
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Maps the graph's load order to the registered wrappers. Plugins that cannot be loaded
+     * because of a missing or circular dependency are logged and marked
+     * {@link PluginState#FAILED} if they have not been attempted yet.
+     */
+    private List<PluginWrapper> resolveLoadOrder(DependencyGraph graph) {
+        graph.getFailures().forEach((pluginId, e) -> {
+            PluginWrapper pluginWrapper = getPlugin(pluginId);
+            if (pluginWrapper != null && pluginWrapper.compareAndSetState(PluginState.CREATED, PluginState.FAILED)) {
+                logger.error(e.getMessage());
+            }
+        });
+
+        List<PluginWrapper> sortedPlugins = new ArrayList<>(graph.getLoadOrder().size());
+        for (String pluginId : graph.getLoadOrder()) {
+            PluginWrapper pluginWrapper = getPlugin(pluginId);
+            if (pluginWrapper != null) {
+                sortedPlugins.add(pluginWrapper);
+            }
+        }
+        return sortedPlugins;
     }
 
     /**
      * Creates a single {@link PluginWrapper} from a JAR path and adds it to the internal list
-     * if the descriptor is valid and the plugin ID is not already registered.
+     * if the descriptor is valid and the plugin ID is not already registered. The JAR is opened
+     * as a {@link PluginArchive} that stays retained until the following load pass finishes,
+     * so the descriptor finder, class loader and configuration finder share one open file.
      *
      * @param path the path to the plugin JAR file
      */
-    protected void createPluginWrapperFromPath(Path path) {
-        PluginDescriptor pluginDescriptor = descriptorFinder.findPluginDescriptor(path);
+    protected synchronized void createPluginWrapperFromPath(Path path) {
+        PluginArchive archive = new PluginArchive(path).retain();
+        addPluginWrapper(archive, findPluginDescriptor(archive));
+    }
+
+    private void addPluginWrapper(PluginArchive archive, PluginDescriptor pluginDescriptor) {
+        PluginWrapper pluginWrapper = createPluginWrapper(archive, pluginDescriptor);
+        if (pluginWrapper != null) {
+            registerPluginWrappers(List.of(pluginWrapper));
+        }
+    }
+
+    private PluginWrapper createPluginWrapper(PluginArchive archive, PluginDescriptor pluginDescriptor) {
+        Path path = archive.getPath();
         logger.debug("Creating plugin wrapper from path: {}", path);
         if (pluginDescriptor == null) {
             logger.error("DescriptionFinder was unable to find a plugin descriptor for path: {}", path);
-            return;
+            archive.release();
+            return null;
         }
-        String pluginId = pluginDescriptor.getPluginId();
-        PluginWrapper existing = getPlugin(pluginId);
-        if (existing != null) {
-            logger.error("Duplicate found. A plugin with the ID {} is already registered. Existing: {}, duplicate: {}", pluginId, existing.getPath(), path);
-            return;
+        return new PluginWrapper(this, pluginDescriptor, configurationFinder, archive);
+    }
+
+    /** Adds the wrappers to the registry as one batch; duplicates are logged and released. */
+    private void registerPluginWrappers(List<PluginWrapper> pluginWrappers) {
+        Set<PluginWrapper> rejected = Collections.newSetFromMap(new IdentityHashMap<>());
+        rejected.addAll(registry.addAll(pluginWrappers));
+        for (PluginWrapper pluginWrapper : pluginWrappers) {
+            String pluginId = pluginWrapper.getPluginDescriptor().getPluginId();
+            if (rejected.contains(pluginWrapper)) {
+                logger.error("Duplicate found. A plugin with the ID {} is already registered. Existing: {}, duplicate: {}", pluginId, getPlugin(pluginId).getPath(), pluginWrapper.getPath());
+                pluginWrapper.getPluginArchive().release();
+                continue;
+            }
+            // Registered after the registry's listener, so activations see up-to-date state counts.
+            pluginWrapper.addStateListener(activationListener);
+            logger.debug("Found plugin descriptor for {}", pluginId);
+            retainedArchives.add(pluginWrapper.getPluginArchive());
         }
-        logger.debug("Found plugin descriptor for {}", pluginId);
-        pluginWrappers.add(new PluginWrapper(this, pluginDescriptor, configurationFinder, path));
     }
 }
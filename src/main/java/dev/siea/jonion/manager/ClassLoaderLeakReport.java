@@ -0,0 +1,113 @@
+package dev.siea.jonion.manager;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the plugin class loaders an {@link AbstractPluginManager} has released and
+ * whether the garbage collector has reclaimed them.
+ * <p>
+ * Every unload, reload or eviction releases the plugin's class loader. A loader that is still
+ * reachable long after its release keeps all of the plugin's classes in metaspace; the
+ * {@link #getLeaks() leaks} list those loaders with their plugin ID and how long ago they were
+ * released. A loader is only reclaimed by a garbage collection, so a young loader that is
+ * still pending is not necessarily leaked; ask for a minimum age that spans several
+ * collections.
+ * </p>
+ *
+ * @see AbstractPluginManager#getClassLoaderLeaks(Duration)
+ */
+public final class ClassLoaderLeakReport {
+    private final long releasedCount;
+    private final long collectedCount;
+    private final int pendingCount;
+    private final List<Leak> leaks;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param releasedCount  the number of class loaders released
+     * @param collectedCount the number of released class loaders that were garbage collected
+     * @param pendingCount   the number of released class loaders not collected yet
+     * @param leaks          the pending class loaders that are old enough to count as leaked
+     */
+    public ClassLoaderLeakReport(long releasedCount, long collectedCount, int pendingCount, List<Leak> leaks) {
+        this.releasedCount = releasedCount;
+        this.collectedCount = collectedCount;
+        this.pendingCount = pendingCount;
+        this.leaks = List.copyOf(leaks);
+    }
+
+    /** Returns the number of class loaders released since the manager was created. */
+    public long getReleasedCount() {
+        return releasedCount;
+    }
+
+    /** Returns the number of released class loaders that were garbage collected. */
+    public long getCollectedCount() {
+        return collectedCount;
+    }
+
+    /** Returns the number of released class loaders that have not been collected, regardless of age. */
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    /** Returns the suspected leaks, oldest first. */
+    public List<Leak> getLeaks() {
+        return leaks;
+    }
+
+    /** Returns the number of suspected leaks per plugin ID. */
+    public Map<String, Integer> getLeakCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Leak leak : leaks) {
+            counts.merge(leak.getPluginId(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassLoaderLeakReport{released=" + releasedCount
+                + ", collected=" + collectedCount
+                + ", pending=" + pendingCount
+                + ", leaks=" + getLeakCounts() + '}';
+    }
+
+    /**
+     * A released class loader that has not been garbage collected.
+     */
+    public static final class Leak {
+        private final String pluginId;
+        private final Duration age;
+
+        /**
+         * Creates a leak entry.
+         *
+         * @param pluginId the ID of the plugin the loader belonged to
+         * @param age      how long ago the loader was released
+         */
+        public Leak(String pluginId, Duration age) {
+            this.pluginId = pluginId;
+            this.age = age;
+        }
+
+        /** Returns the ID of the plugin the loader belonged to. */
+        public String getPluginId() {
+            return pluginId;
+        }
+
+        /** Returns how long ago the loader was released, as of the snapshot. */
+        public Duration getAge() {
+            return age;
+        }
+
+        @Override
+        public String toString() {
+            return pluginId + " (released " + age + " ago)";
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package dev.siea.jonion.manager;
+
+import java.lang.ref.Cleaner;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of plugin class loaders that were released by an unload or eviction until the
+ * garbage collector reclaims them.
+ * <p>
+ * Each released loader is registered with a shared {@link Cleaner}; the tracker only holds a
+ * small record of the plugin ID and release time, never the loader itself, so tracking does
+ * not keep a loader alive. A loader whose record is still pending long after its release is
+ * reachable from somewhere (a static field, a thread, a cached instance) and is reported as a
+ * suspected leak.
+ * </p>
+ *
+ * @see ClassLoaderLeakReport
+ */
+final class ClassLoaderTracker {
+    private static final Cleaner CLEANER = Cleaner.create(new NamedThreadFactory("jonion-cleaner"));
+
+    private final Set<Released> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicLong releasedCount = new AtomicLong();
+    private final AtomicLong collectedCount = new AtomicLong();
+
+    /**
+     * Starts tracking a class loader that its plugin no longer uses.
+     *
+     * @param pluginId    the ID of the plugin the loader belonged to
+     * @param classLoader the released loader
+     */
+    void track(String pluginId, ClassLoader classLoader) {
+        Released released = new Released(pluginId, System.nanoTime());
+        pending.add(released);
+        releasedCount.incrementAndGet();
+        // The cleanup action must not capture the loader, or it would never become unreachable.
+        CLEANER.register(classLoader, () -> collected(released));
+    }
+
+    private void collected(Released released) {
+        if (pending.remove(released)) {
+            collectedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the loaders released at least {@code minAge} ago that have not been collected.
+     *
+     * @param minAge the minimum time since release
+     * @return the report, oldest leak first
+     */
+    ClassLoaderLeakReport report(Duration minAge) {
+        long now = System.nanoTime();
+        long minAgeNanos = minAge.toNanos();
+        List<ClassLoaderLeakReport.Leak> leaks = new ArrayList<>();
+        for (Released released : pending) {
+            long age = now - released.releasedNanos;
+            if (age >= minAgeNanos) {
+                leaks.add(new ClassLoaderLeakReport.Leak(released.pluginId, Duration.ofNanos(age)));
+            }
+        }
+        leaks.sort(Comparator.comparing(ClassLoaderLeakReport.Leak::getAge).reversed());
+        return new ClassLoaderLeakReport(releasedCount.get(), collectedCount.get(), pending.size(), leaks);
+    }
+
+    /** A released loader; compared by identity so two releases of the same plugin stay distinct. */
+    private static final class Released {
+        private final String pluginId;
+        private final long releasedNanos;
+
+        Released(String pluginId, long releasedNanos) {
+            this.pluginId = pluginId;
+            this.releasedNanos = releasedNanos;
+        }
+    }
+}
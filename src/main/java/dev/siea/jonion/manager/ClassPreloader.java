@@ -0,0 +1,165 @@
+package dev.siea.jonion.manager;
+
+import dev.siea.jonion.PluginWrapper;
+import dev.siea.jonion.archive.PluginArchive;
+import dev.siea.jonion.loader.CustomClassLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records which classes each plugin uses and preloads them on background threads the next
+ * time the plugin is loaded. Used by {@link AbstractPluginManager#enableClassPreloading()}.
+ * <p>
+ * When a plugin is loaded, its class loader starts recording, and the list saved by an
+ * earlier run is replayed with {@link CustomClassLoader#preload(java.util.Collection)} on a
+ * pool thread while the manager goes on loading and starting plugins. When the plugin is
+ * unloaded or evicted the recorded list is written next to its JAR as {@code <jar>.preload}:
+ * a header line with the JAR's size and modification time, then one class name per line.
+ * A list recorded for a different version of the JAR is ignored and recorded again.
+ * </p>
+ *
+ * @see CustomClassLoader#startRecording()
+ */
+final class ClassPreloader implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ClassPreloader.class);
+    private static final String FILE_SUFFIX = ".preload";
+    private static final String HEADER_PREFIX = "# jonion-preload ";
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a preloader.
+     *
+     * @param threads the number of plugins whose classes are preloaded concurrently
+     */
+    ClassPreloader(int threads) {
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("jonion-preload"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts recording a plugin that has just been loaded and replays its saved list, if any,
+     * in the background.
+     *
+     * @param pluginWrapper the loaded plugin
+     */
+    void pluginLoaded(PluginWrapper pluginWrapper) {
+        CustomClassLoader classLoader = pluginWrapper.getClassLoader();
+        if (classLoader == null) {
+            return;
+        }
+        classLoader.startRecording();
+        Path file = preloadFile(pluginWrapper);
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try {
+            executor.execute(() -> replay(pluginWrapper, classLoader, file));
+        } catch (RejectedExecutionException e) {
+            // closed
+        }
+    }
+
+    private void replay(PluginWrapper pluginWrapper, CustomClassLoader classLoader, Path file) {
+        String pluginId = pluginWrapper.getPluginDescriptor().getPluginId();
+        try {
+            List<String> classNames = read(file, pluginWrapper.getPluginArchive());
+            if (classNames == null) {
+                log.debug("Ignoring outdated class preload list of plugin {}", pluginId);
+                return;
+            }
+            long begin = System.nanoTime();
+            int defined = classLoader.preload(classNames);
+            log.debug("Preloaded {} of {} classes of plugin {} in {} ms", defined, classNames.size(), pluginId,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+        } catch (IOException e) {
+            log.warn("Could not read class preload list {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the classes a plugin has used so far next to its JAR. Does nothing if nothing was
+     * recorded.
+     *
+     * @param pluginWrapper the plugin, still loaded
+     */
+    void save(PluginWrapper pluginWrapper) {
+        CustomClassLoader classLoader = pluginWrapper.getClassLoader();
+        List<String> classNames = classLoader != null ? classLoader.getRecordedClasses() : List.of();
+        if (classNames.isEmpty()) {
+            return;
+        }
+        Path file = preloadFile(pluginWrapper);
+        try {
+            write(file, pluginWrapper.getPluginArchive(), classNames);
+        } catch (IOException e) {
+            log.warn("Could not write class preload list {}: {}", file, e.getMessage());
+        }
+    }
+
+    /** Stops the preloading threads; lists being replayed are abandoned. */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static Path preloadFile(PluginWrapper pluginWrapper) {
+        Path jar = pluginWrapper.getPath();
+        return jar.resolveSibling(jar.getFileName() + FILE_SUFFIX);
+    }
+
+    private static String header(PluginArchive archive) {
+        return HEADER_PREFIX + archive.getSize() + " " + archive.getLastModified();
+    }
+
+    /** Returns the class names in the file, or null if it was recorded for a different JAR. */
+    private static List<String> read(Path file, PluginArchive archive) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!header(archive).equals(reader.readLine())) {
+                return null;
+            }
+            List<String> classNames = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    classNames.add(line);
+                }
+            }
+            return classNames;
+        }
+    }
+
+    private static void write(Path file, PluginArchive archive, List<String> classNames) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write(header(archive));
+            writer.newLine();
+            for (String className : classNames) {
+                writer.write(className);
+                writer.newLine();
+            }
+        }
+        try {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -1,13 +1,32 @@
 package dev.siea.jonion.manager;
 
+import dev.siea.jonion.PluginWrapper;
+import dev.siea.jonion.configuration.finder.PluginConfigurationFinder;
+import dev.siea.jonion.dependency.DependencyGraph;
+import dev.siea.jonion.dependency.PluginDependency;
 import dev.siea.jonion.descriptor.finder.PluginDescriptorFinder;
 import dev.siea.jonion.descriptor.finder.YamlDescriptorFinder;
 import dev.siea.jonion.impl.SimplePlugin;
 import dev.siea.jonion.lifecycle.PluginState;
+import dev.siea.jonion.lifecycle.PluginTier;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Default implementation of {@link AbstractPluginManager} that adds start/stop lifecycle
@@ -20,6 +39,13 @@ import java.util.concurrent.atomic.AtomicInteger;
  * failures are logged and the wrapper's state is set to {@link PluginState#FAILED}.
  * </p>
  * <p>
+ * {@link #start(Duration)} and {@link #stop(Duration)} run the lifecycle concurrently along
+ * the dependency graph instead, with a deadline per plugin, and report how long each plugin
+ * took. {@link #startTiered(Duration)} starts only {@link PluginTier#CRITICAL} plugins (and
+ * what they depend on) before returning and the other tiers in the background; hosts await
+ * a tier through {@link #getTierReadiness(PluginTier)}.
+ * </p>
+ * <p>
  * <strong>Note:</strong> This manager assumes all loaded plugins are instances of
  * {@link SimplePlugin}. Plugins that extend {@link dev.siea.jonion.Plugin} but not
  * {@link SimplePlugin} will throw {@link ClassCastException} when started or stopped.
@@ -30,6 +56,10 @@ import java.util.concurrent.atomic.AtomicInteger;
  * @see PluginState
  */
 public class DefaultPluginManager extends AbstractPluginManager {
+    private volatile boolean started;
+    private volatile Map<PluginTier, CompletableFuture<Void>> tierReadiness = newTierReadiness();
+    private int startGeneration;
+
     /**
      * Creates a manager that scans the default {@code plugins} directory with the
      * default YAML descriptor finder.
@@ -57,49 +87,371 @@ public class DefaultPluginManager extends AbstractPluginManager {
         super(directory, descriptorFinder);
     }
 
+    /**
+     * Creates a manager with custom descriptor and configuration finders.
+     *
+     * @param directory             the path to the plugin directory (created if it does not exist)
+     * @param descriptorFinder     the finder used to read plugin descriptors from JARs
+     * @param configurationFinder  the finder used to locate plugin configuration files
+     */
+    public DefaultPluginManager(Path directory, PluginDescriptorFinder descriptorFinder, PluginConfigurationFinder configurationFinder) {
+        super(directory, descriptorFinder, configurationFinder);
+    }
+
+    /**
+     * Creates a manager with custom finders that reads plugin descriptors and loads plugins on
+     * up to {@code parallelism} threads.
+     *
+     * @param directory             the path to the plugin directory (created if it does not exist)
+     * @param descriptorFinder     the finder used to read plugin descriptors from JARs
+     * @param configurationFinder  the finder used to locate plugin configuration files
+     * @param parallelism           the maximum number of JARs read or plugins loaded concurrently; {@code 1} works sequentially
+     * @see AbstractPluginManager#AbstractPluginManager(Path, PluginDescriptorFinder, PluginConfigurationFinder, int)
+     */
+    public DefaultPluginManager(Path directory, PluginDescriptorFinder descriptorFinder, PluginConfigurationFinder configurationFinder, int parallelism) {
+        super(directory, descriptorFinder, configurationFinder, parallelism);
+    }
+
+    /**
+     * Creates a manager with custom finders and a choice between eager and lazy activation.
+     * With lazy activation a plugin is started when it is first accessed if {@link #start()}
+     * has been called by then.
+     *
+     * @param directory             the path to the plugin directory (created if it does not exist)
+     * @param descriptorFinder     the finder used to read plugin descriptors from JARs
+     * @param configurationFinder  the finder used to locate plugin configuration files
+     * @param parallelism           the maximum number of JARs read or plugins loaded concurrently; {@code 1} works sequentially
+     * @param lazyActivation        true to load plugins on first access instead of during discovery
+     * @see AbstractPluginManager#AbstractPluginManager(Path, PluginDescriptorFinder, PluginConfigurationFinder, int, boolean)
+     */
+    public DefaultPluginManager(Path directory, PluginDescriptorFinder descriptorFinder, PluginConfigurationFinder configurationFinder, int parallelism, boolean lazyActivation) {
+        super(directory, descriptorFinder, configurationFinder, parallelism, lazyActivation);
+    }
+
     /**
      * Starts all loaded plugins by calling {@link SimplePlugin#start()} on each.
      * Only wrappers in {@link PluginState#LOADED} are started. On failure the wrapper
      * is set to {@link PluginState#FAILED} and the error is logged. Logs a summary
-     * of how many plugins started successfully and how many failed.
+     * of how many plugins started successfully and how many failed. Plugins loaded later by
+     * a reload are started as soon as they are loaded, until {@link #stop()} is called.
      */
-    public void start() {
-        AtomicInteger failedCount = new AtomicInteger();
+    public synchronized void start() {
         long toStart = getPlugins().stream().filter(p -> p.getState() == PluginState.LOADED).count();
+        long failedCount = getPlugins().stream().filter(p -> !startPlugin(p)).count();
+        started = true;
+        tierReadiness.values().forEach(readiness -> readiness.complete(null));
 
-        getPlugins().forEach(pluginWrapper -> {
-            try {
-                if (pluginWrapper.getState().equals(PluginState.LOADED)) {
-                    ((SimplePlugin) pluginWrapper.getPlugin()).start();
-                }
-            } catch (Throwable e) {
-                pluginWrapper.setState(PluginState.FAILED);
-                logger.error("Failed to start plugin: {}", pluginWrapper.getPluginDescriptor().getPluginId(), e);
-                failedCount.getAndIncrement();
-            }
-        });
-
-        logger.info("Successfully started {} plugins. Failed to start {} plugins.", toStart - failedCount.get(), failedCount.get());
+        logger.info("Successfully started {} plugins. Failed to start {} plugins.", toStart - failedCount, failedCount);
     }
 
     /**
      * Stops all loaded plugins by calling {@link SimplePlugin#stop()} on each, then
      * {@link #unloadPlugins() unloads} every plugin. Only wrappers in
      * {@link PluginState#LOADED} are stopped; failures are logged and the wrapper
-     * is set to {@link PluginState#FAILED}.
+     * is set to {@link PluginState#FAILED}. A running directory watcher and idle-plugin
+     * eviction are stopped first.
+     */
+    public synchronized void stop() {
+        stopWatchingPluginDirectory();
+        disableEviction();
+        started = false;
+        cancelTierReadiness();
+        getPlugins().forEach(this::stopPlugin);
+
+        unloadPlugins();
+    }
+
+    /**
+     * Starts all loaded plugins concurrently, each as soon as the plugins it depends on have
+     * started, and waits for them to finish.
+     * <p>
+     * Every {@link SimplePlugin#start()} call runs on its own thread and may take at most
+     * {@code timeout}; a plugin that fails or does not return in time is set to
+     * {@link PluginState#FAILED}, and plugins that require it are set to
+     * {@link PluginState#FAILED} without being started. A plugin that timed out keeps running
+     * on a daemon thread, but the manager no longer waits for it. Plugins loaded later by a
+     * reload are started as soon as they are loaded, until {@link #stop()} is called.
+     * </p>
+     *
+     * @param timeout the maximum time a single plugin may spend in {@code start()}
+     * @return the time each attempted plugin spent in {@code start()} (the timeout for plugins
+     *         that timed out), by plugin ID in registration order
+     */
+    public synchronized Map<String, Duration> start(Duration timeout) {
+        Map<String, Duration> latencies = runInDependencyOrder(getPlugins(PluginState.LOADED), false, timeout, "start");
+        started = true;
+        tierReadiness.values().forEach(readiness -> readiness.complete(null));
+        long failedCount = latencies.keySet().stream()
+                .filter(pluginId -> getPlugin(pluginId).getState() != PluginState.LOADED)
+                .count();
+        logger.info("Successfully started {} plugins. Failed to start {} plugins.", latencies.size() - failedCount, failedCount);
+        return latencies;
+    }
+
+    /**
+     * Starts {@link PluginTier#CRITICAL} plugins, and every plugin they depend on, like
+     * {@link #start(Duration)} and returns once they have started; the remaining tiers are
+     * started afterwards on a background thread, one tier at a time in {@link PluginTier}
+     * order.
+     * <p>
+     * A plugin is started in the earliest tier of itself and all plugins that (transitively)
+     * depend on it. Each tier completes its {@link #getTierReadiness(PluginTier) readiness
+     * future} once all of its plugins have been attempted, whether they started or failed;
+     * the states tell which. Background tiers hold the manager's lock while they run, so
+     * {@link #stop()} waits for the running tier and cancels the remaining ones.
+     * </p>
+     *
+     * @param timeout the maximum time a single plugin may spend in {@code start()}
+     * @return the time each critical plugin spent in {@code start()}, by plugin ID in
+     *         registration order
      */
-    public void stop() {
-        getPlugins().forEach(pluginWrapper -> {
-            try {
-                if (pluginWrapper.getState().equals(PluginState.LOADED)) {
-                    ((SimplePlugin) pluginWrapper.getPlugin()).stop();
+    public synchronized Map<String, Duration> startTiered(Duration timeout) {
+        Map<PluginTier, CompletableFuture<Void>> readiness = tierReadiness;
+        int generation = ++startGeneration;
+        started = true;
+        Map<String, Duration> latencies = startTier(PluginTier.CRITICAL, timeout, readiness);
+        logger.info("Started {} critical plugins; starting the remaining tiers in the background.", latencies.size());
+
+        ExecutorService scheduler = Executors.newSingleThreadExecutor(new NamedThreadFactory("jonion-startup"));
+        scheduler.execute(() -> {
+            for (PluginTier tier : PluginTier.values()) {
+                if (tier == PluginTier.CRITICAL) {
+                    continue;
+                }
+                synchronized (this) {
+                    if (generation != startGeneration) {
+                        return;
+                    }
+                    startTier(tier, timeout, readiness);
                 }
-            } catch (Throwable e){
-                pluginWrapper.setState(PluginState.FAILED);
-                logger.error("Failed to stop plugin: {}", pluginWrapper.getPluginDescriptor().getPluginId(), e);
             }
         });
+        scheduler.shutdown();
+        return latencies;
+    }
+
+    /**
+     * Returns a future that completes when the given tier has been started by
+     * {@link #startTiered(Duration)}, or by {@link #start()} or {@link #start(Duration)}, which
+     * start all tiers at once. If the manager is stopped first, the future completes
+     * exceptionally with a {@link CancellationException}; a later start uses new futures.
+     *
+     * @param tier the tier to await
+     * @return a new future that completes when the tier is ready
+     */
+    public CompletableFuture<Void> getTierReadiness(PluginTier tier) {
+        return tierReadiness.get(tier).copy();
+    }
+
+    private Map<String, Duration> startTier(PluginTier tier, Duration timeout, Map<PluginTier, CompletableFuture<Void>> readiness) {
+        try {
+            DependencyGraph graph = getDependencyGraph();
+            List<PluginWrapper> plugins = new ArrayList<>();
+            for (PluginWrapper pluginWrapper : getPlugins(PluginState.LOADED)) {
+                if (effectiveTier(graph, pluginWrapper) == tier) {
+                    plugins.add(pluginWrapper);
+                }
+            }
+            Map<String, Duration> latencies = runInDependencyOrder(plugins, false, timeout, "start");
+            logger.debug("Started {} tier: {} plugins", tier, latencies.size());
+            return latencies;
+        } catch (RuntimeException e) {
+            logger.error("Failed to start {} tier", tier, e);
+            return new LinkedHashMap<>();
+        } finally {
+            readiness.get(tier).complete(null);
+        }
+    }
+
+    /** Returns the earliest tier of the plugin and every plugin that (transitively) depends on it. */
+    private PluginTier effectiveTier(DependencyGraph graph, PluginWrapper pluginWrapper) {
+        String pluginId = pluginWrapper.getPluginDescriptor().getPluginId();
+        PluginTier tier = tierOf(pluginWrapper);
+        for (String dependentId : graph.getTransitiveDependents(pluginId)) {
+            PluginWrapper dependent = getPlugin(dependentId);
+            if (dependent != null && tierOf(dependent).compareTo(tier) < 0) {
+                tier = tierOf(dependent);
+            }
+        }
+        return tier;
+    }
+
+    private static PluginTier tierOf(PluginWrapper pluginWrapper) {
+        PluginTier tier = pluginWrapper.getPluginDescriptor().getTier();
+        return tier != null ? tier : PluginTier.NORMAL;
+    }
+
+    private void cancelTierReadiness() {
+        startGeneration++;
+        Map<PluginTier, CompletableFuture<Void>> readiness = tierReadiness;
+        tierReadiness = newTierReadiness();
+        readiness.values().forEach(future -> future.completeExceptionally(new CancellationException("Plugin manager stopped")));
+    }
+
+    private static Map<PluginTier, CompletableFuture<Void>> newTierReadiness() {
+        Map<PluginTier, CompletableFuture<Void>> readiness = new EnumMap<>(PluginTier.class);
+        for (PluginTier tier : PluginTier.values()) {
+            readiness.put(tier, new CompletableFuture<>());
+        }
+        return readiness;
+    }
+
+    /**
+     * Stops all loaded plugins concurrently in reverse dependency order, each as soon as every
+     * plugin depending on it has stopped, then {@link #unloadPlugins() unloads} every plugin.
+     * <p>
+     * Every {@link SimplePlugin#stop()} call runs on its own thread and may take at most
+     * {@code timeout}; a plugin that fails or does not return in time is set to
+     * {@link PluginState#FAILED} and the shutdown moves on. A running directory watcher and
+     * idle-plugin eviction are stopped first.
+     * </p>
+     *
+     * @param timeout the maximum time a single plugin may spend in {@code stop()}
+     * @return the time each attempted plugin spent in {@code stop()} (the timeout for plugins
+     *         that timed out), by plugin ID in registration order
+     */
+    public synchronized Map<String, Duration> stop(Duration timeout) {
+        stopWatchingPluginDirectory();
+        disableEviction();
+        started = false;
+        cancelTierReadiness();
+        Map<String, Duration> latencies = runInDependencyOrder(getPlugins(PluginState.LOADED), true, timeout, "stop");
 
         unloadPlugins();
+        return latencies;
+    }
+
+    /**
+     * Runs {@code start()} or {@code stop()} on the given plugins, each on its own thread once
+     * its prerequisites are done: its dependencies when starting, its dependents when stopping.
+     */
+    private Map<String, Duration> runInDependencyOrder(List<PluginWrapper> plugins, boolean stopping, Duration timeout, String action) {
+        Map<String, CompletableFuture<Boolean>> done = new HashMap<>();
+        plugins.forEach(pluginWrapper -> done.put(pluginWrapper.getPluginDescriptor().getPluginId(), new CompletableFuture<>()));
+        DependencyGraph graph = getDependencyGraph();
+
+        Map<String, Duration> latencies = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newCachedThreadPool(new NamedThreadFactory("jonion-lifecycle"));
+        try {
+            for (PluginWrapper pluginWrapper : plugins) {
+                String pluginId = pluginWrapper.getPluginDescriptor().getPluginId();
+                List<CompletableFuture<Boolean>> waitFor = new ArrayList<>();
+                List<String> required = new ArrayList<>();
+                if (stopping) {
+                    for (String dependentId : graph.getDependents(pluginId)) {
+                        CompletableFuture<Boolean> dependentDone = done.get(dependentId);
+                        if (dependentDone != null) {
+                            waitFor.add(dependentDone);
+                        }
+                    }
+                } else {
+                    for (PluginDependency dependency : pluginWrapper.getPluginDescriptor().getDependencies()) {
+                        CompletableFuture<Boolean> dependencyDone = done.get(dependency.getPluginId());
+                        if (dependencyDone != null) {
+                            // Optional dependencies only order the start; their failure is tolerated.
+                            waitFor.add(dependencyDone);
+                            if (!dependency.isOptional()) {
+                                required.add(dependency.getPluginId());
+                            }
+                        } else if (!dependency.isOptional()) {
+                            // Started earlier (e.g. in an earlier tier); it must still be running.
+                            PluginWrapper dependencyPlugin = getPlugin(dependency.getPluginId());
+                            if (dependencyPlugin == null || dependencyPlugin.getState() != PluginState.LOADED) {
+                                required.add(dependency.getPluginId());
+                            }
+                        }
+                    }
+                }
+                CompletableFuture.allOf(waitFor.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+                    for (String dependencyId : required) {
+                        CompletableFuture<Boolean> dependencyDone = done.get(dependencyId);
+                        if (dependencyDone == null || !dependencyDone.join()) {
+                            logger.error("Not starting plugin {}: required dependency {} failed to start", pluginId, dependencyId);
+                            pluginWrapper.compareAndSetState(PluginState.LOADED, PluginState.FAILED);
+                            done.get(pluginId).complete(false);
+                            return;
+                        }
+                    }
+                    long begin = System.nanoTime();
+                    CompletableFuture.runAsync(() -> {
+                        if (pluginWrapper.getState() == PluginState.LOADED) {
+                            SimplePlugin plugin = (SimplePlugin) pluginWrapper.getPlugin();
+                            if (stopping) {
+                                plugin.stop();
+                            } else {
+                                plugin.start();
+                            }
+                        }
+                    }, executor).orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS).whenComplete((ignored, error) -> {
+                        latencies.put(pluginId, Duration.ofNanos(System.nanoTime() - begin));
+                        if (error != null) {
+                            pluginWrapper.compareAndSetState(PluginState.LOADED, PluginState.FAILED);
+                            if (error instanceof TimeoutException) {
+                                logger.error("Plugin {} did not {} within {}", pluginId, action, timeout);
+                            } else {
+                                logger.error("Failed to {} plugin: {}", action, pluginId, error instanceof CompletionException ? error.getCause() : error);
+                            }
+                        }
+                        done.get(pluginId).complete(error == null);
+                    });
+                });
+            }
+            CompletableFuture.allOf(done.values().toArray(new CompletableFuture<?>[0])).join();
+        } finally {
+            executor.shutdown();
+        }
+
+        Map<String, Duration> ordered = new LinkedHashMap<>();
+        for (PluginWrapper pluginWrapper : plugins) {
+            String pluginId = pluginWrapper.getPluginDescriptor().getPluginId();
+            Duration latency = latencies.get(pluginId);
+            if (latency != null) {
+                ordered.put(pluginId, latency);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Starts plugins loaded by a reload while this manager is started, unless their tier is
+     * still waiting to be started by {@link #startTiered(Duration)}.
+     */
+    @Override
+    protected void onPluginLoaded(PluginWrapper pluginWrapper) {
+        if (started && tierReadiness.get(effectiveTier(getDependencyGraph(), pluginWrapper)).isDone() && startPlugin(pluginWrapper)) {
+            logger.info("Started reloaded plugin {}", pluginWrapper.getPluginDescriptor().getPluginId());
+        }
+    }
+
+    /** Stops plugins that are about to be unloaded while this manager is started. */
+    @Override
+    protected void onPluginUnloading(PluginWrapper pluginWrapper) {
+        if (started) {
+            stopPlugin(pluginWrapper);
+        }
+    }
+
+    private boolean startPlugin(PluginWrapper pluginWrapper) {
+        try {
+            if (pluginWrapper.getState().equals(PluginState.LOADED)) {
+                ((SimplePlugin) pluginWrapper.getPlugin()).start();
+            }
+            return true;
+        } catch (Throwable e) {
+            pluginWrapper.compareAndSetState(PluginState.LOADED, PluginState.FAILED);
+            logger.error("Failed to start plugin: {}", pluginWrapper.getPluginDescriptor().getPluginId(), e);
+            return false;
+        }
+    }
+
+    private void stopPlugin(PluginWrapper pluginWrapper) {
+        try {
+            if (pluginWrapper.getState().equals(PluginState.LOADED)) {
+                ((SimplePlugin) pluginWrapper.getPlugin()).stop();
+            }
+        } catch (Throwable e){
+            pluginWrapper.compareAndSetState(PluginState.LOADED, PluginState.FAILED);
+            logger.error("Failed to stop plugin: {}", pluginWrapper.getPluginDescriptor().getPluginId(), e);
+        }
     }
 }
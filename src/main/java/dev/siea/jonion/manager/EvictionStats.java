@@ -0,0 +1,65 @@
+package dev.siea.jonion.manager;
+
+import java.time.Duration;
+
+/**
+ * Snapshot of the idle-plugin eviction metrics of an {@link AbstractPluginManager}.
+ * <p>
+ * Counts the plugins evicted since the manager was created and the evicted plugins that were
+ * loaded again on a later access, together with how long those reactivations took. A high
+ * reactivation count relative to evictions indicates that the idle time or resident limit
+ * is too tight for the workload.
+ * </p>
+ *
+ * @see AbstractPluginManager#enableEviction(Duration, int)
+ * @see AbstractPluginManager#getEvictionStats()
+ */
+public final class EvictionStats {
+    private final long evictionCount;
+    private final long reactivationCount;
+    private final long totalReactivationNanos;
+    private final long maxReactivationNanos;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param evictionCount          the number of plugins evicted
+     * @param reactivationCount      the number of evicted plugins loaded again
+     * @param totalReactivationNanos the summed load time of those reactivations
+     * @param maxReactivationNanos   the longest single reactivation
+     */
+    public EvictionStats(long evictionCount, long reactivationCount, long totalReactivationNanos, long maxReactivationNanos) {
+        this.evictionCount = evictionCount;
+        this.reactivationCount = reactivationCount;
+        this.totalReactivationNanos = totalReactivationNanos;
+        this.maxReactivationNanos = maxReactivationNanos;
+    }
+
+    /** Returns the number of plugins evicted. */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /** Returns the number of evicted plugins that were loaded again on access. */
+    public long getReactivationCount() {
+        return reactivationCount;
+    }
+
+    /** Returns the average time a reactivation took, or zero if there was none. */
+    public Duration getAverageReactivationLatency() {
+        return reactivationCount == 0 ? Duration.ZERO : Duration.ofNanos(totalReactivationNanos / reactivationCount);
+    }
+
+    /** Returns the longest time a single reactivation took, or zero if there was none. */
+    public Duration getMaxReactivationLatency() {
+        return Duration.ofNanos(maxReactivationNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "EvictionStats{evictions=" + evictionCount
+                + ", reactivations=" + reactivationCount
+                + ", averageReactivationLatency=" + getAverageReactivationLatency()
+                + ", maxReactivationLatency=" + getMaxReactivationLatency() + '}';
+    }
+}
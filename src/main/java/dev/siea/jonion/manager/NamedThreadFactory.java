@@ -0,0 +1,32 @@
+package dev.siea.jonion.manager;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ThreadFactory} for the worker pools used by the plugin managers.
+ * <p>
+ * Threads are named {@code <prefix>-<n>} so they are easy to identify in thread dumps, and
+ * are daemon threads so a stuck plugin or descriptor finder never keeps the host JVM alive.
+ * </p>
+ */
+final class NamedThreadFactory implements ThreadFactory {
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Creates a factory whose threads are named with the given prefix.
+     *
+     * @param prefix the thread name prefix (e.g. {@code jonion-discovery})
+     */
+    NamedThreadFactory(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,167 @@
+package dev.siea.jonion.manager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches a plugin directory tree with a {@link WatchService} and runs a callback once file
+ * activity has settled.
+ * <p>
+ * Every event concerning a JAR, or a directory being created or deleted, restarts the debounce window; the callback runs
+ * on the watcher thread when the window passes without further events, so a burst of
+ * copies, deletes and renames results in a single invocation. Newly created subdirectories
+ * are registered automatically. Used by
+ * {@link AbstractPluginManager#watchPluginDirectory(Duration)}.
+ * </p>
+ *
+ * @see AbstractPluginManager#reloadChangedPlugins()
+ */
+final class PluginDirectoryWatcher implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(PluginDirectoryWatcher.class);
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final Set<Path> watchedDirectories = ConcurrentHashMap.newKeySet();
+    private final long debounceNanos;
+    private final Runnable onChange;
+    private final Thread thread;
+
+    /**
+     * Creates a watcher for the given directory tree. Call {@link #start()} to begin watching.
+     *
+     * @param directory the root directory to watch
+     * @param debounce  how long the directory must stay quiet before {@code onChange} runs
+     * @param onChange  the callback to run after a burst of changes
+     * @throws IOException if the directory cannot be registered
+     */
+    PluginDirectoryWatcher(Path directory, Duration debounce, Runnable onChange) throws IOException {
+        this.watchService = directory.getFileSystem().newWatchService();
+        this.debounceNanos = debounce.toNanos();
+        this.onChange = onChange;
+        this.thread = new NamedThreadFactory("jonion-watcher").newThread(this::run);
+        try {
+            registerTree(directory);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+    }
+
+    /** Starts the watcher thread. */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops watching; a pending callback is discarded. Does not wait for the watcher thread,
+     * which may be blocked on the manager, so a callback that has already started can still
+     * run; the manager checks under its own lock that the watcher is still active.
+     */
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.debug("Failed to close watch service: {}", e.getMessage(), e);
+        }
+        thread.interrupt();
+    }
+
+    private void run() {
+        boolean pending = false;
+        long deadline = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = pending
+                        ? watchService.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+                        : watchService.take();
+                if (key != null) {
+                    if (handleEvents(key)) {
+                        pending = true;
+                        deadline = System.nanoTime() + debounceNanos;
+                    }
+                } else if (pending && System.nanoTime() - deadline >= 0) {
+                    pending = false;
+                    runCallback();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private boolean handleEvents(WatchKey key) {
+        Path directory = directories.get(key);
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                relevant = true;
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (Files.isDirectory(path)) {
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    relevant = true;
+                    try {
+                        registerTree(path);
+                    } catch (IOException e) {
+                        log.warn("Failed to watch new plugin directory {}", path, e);
+                    }
+                }
+            } else if (path.toString().endsWith(".jar")) {
+                relevant = true;
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE && forgetDirectory(path)) {
+                relevant = true;
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+        return relevant;
+    }
+
+    /**
+     * Forgets a deleted path and everything below it if it was a watched directory. The type
+     * of a deleted path cannot be read any more, so it is looked up among the registered ones.
+     */
+    private boolean forgetDirectory(Path path) {
+        return watchedDirectories.removeIf(directory -> directory.startsWith(path));
+    }
+
+    private void runCallback() {
+        try {
+            onChange.run();
+        } catch (Throwable e) {
+            log.error("Failed to apply plugin directory changes", e);
+        }
+    }
+
+    private void registerTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path directory : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                WatchKey key = directory.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, directory);
+                watchedDirectories.add(directory);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package dev.siea.jonion.manager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs eviction passes for an {@link AbstractPluginManager} on a background thread.
+ * <p>
+ * A pass runs periodically, every half of the idle time (between 10 milliseconds and one
+ * minute), and on request when an activation pushed the number of loaded plugins over the
+ * resident limit. Requests that arrive while a pass is pending are coalesced. Used by
+ * {@link AbstractPluginManager#enableEviction(Duration, int)}.
+ * </p>
+ *
+ * @see AbstractPluginManager#evictIdlePlugins()
+ */
+final class PluginEvictor implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(PluginEvictor.class);
+    private static final long MIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long MAX_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final long maxIdleNanos;
+    private final int maxResident;
+    private final Runnable pass;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean passRequested = new AtomicBoolean();
+
+    /**
+     * Creates an evictor. Call {@link #start()} to begin running passes.
+     *
+     * @param maxIdleTime how long a plugin may go without access before it is evicted
+     * @param maxResident the maximum number of plugins that stay loaded
+     * @param pass        the eviction pass to run
+     */
+    PluginEvictor(Duration maxIdleTime, int maxResident, Runnable pass) {
+        this.maxIdleNanos = maxIdleTime.toNanos();
+        this.maxResident = maxResident;
+        this.pass = pass;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("jonion-evictor"));
+    }
+
+    /** Schedules the periodic passes. */
+    void start() {
+        long interval = Math.max(MIN_INTERVAL_NANOS, Math.min(MAX_INTERVAL_NANOS, maxIdleNanos / 2));
+        executor.scheduleWithFixedDelay(this::runPass, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    /** Returns how long a plugin may go without access before it is evicted, in nanoseconds. */
+    long getMaxIdleNanos() {
+        return maxIdleNanos;
+    }
+
+    /** Returns the maximum number of plugins that stay loaded. */
+    int getMaxResident() {
+        return maxResident;
+    }
+
+    /** Runs a pass on the evictor thread as soon as possible, unless one is already pending. */
+    void requestPass() {
+        if (passRequested.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::runPass);
+            } catch (RejectedExecutionException e) {
+                // closed
+            }
+        }
+    }
+
+    private void runPass() {
+        passRequested.set(false);
+        try {
+            pass.run();
+        } catch (Throwable e) {
+            log.error("Failed to evict idle plugins", e);
+        }
+    }
+
+    /** Stops running passes; a pass in progress completes. */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
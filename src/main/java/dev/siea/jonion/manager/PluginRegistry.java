@@ -0,0 +1,294 @@
+package dev.siea.jonion.manager;
+
+import dev.siea.jonion.PluginWrapper;
+import dev.siea.jonion.dependency.DependencyGraph;
+import dev.siea.jonion.descriptor.PluginDescriptor;
+import dev.siea.jonion.lifecycle.PluginState;
+import dev.siea.jonion.lifecycle.PluginStateListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The plugins known to an {@link AbstractPluginManager}, indexed by ID and by state.
+ * <p>
+ * All reads go to an immutable {@link Snapshot} published through a volatile field: the
+ * wrappers in registration order, a hash map by plugin ID and one list per
+ * {@link PluginState}. Readers therefore never lock, never block behind a load or unload in
+ * progress and always see a consistent set of plugins, and polling the returned lists
+ * allocates nothing. Writers (registration changes and state transitions) are serialized
+ * and publish a new snapshot (copy-on-write), copying only the parts that changed.
+ * </p>
+ * <p>
+ * The registry listens to each registered wrapper and keeps the per-state lists up to date
+ * incrementally: a transition copies only the list the wrapper leaves and the one it enters,
+ * and places the wrapper by its registration sequence number. Because listeners can be
+ * notified out of order when a plugin changes state on several threads, the registry moves
+ * the wrapper from the state it is listed under to its current state rather than trusting
+ * the reported transition. Discovery registers its wrappers as one batch with
+ * {@link #addAll(List)}, so the snapshot is copied once per directory scan rather than once
+ * per plugin.
+ * </p>
+ * <p>
+ * The {@link DependencyGraph} of the registered plugins is built on first use and cached
+ * until the set of plugins changes; state transitions do not invalidate it.
+ * </p>
+ *
+ * @see AbstractPluginManager#getPlugins()
+ * @see PluginStateListener
+ */
+final class PluginRegistry implements PluginStateListener {
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile ResolvedGraph dependencyGraph;
+    /** Registration bookkeeping of every registered wrapper; guarded by {@code this}. */
+    private final Map<PluginWrapper, Registration> registrations = new IdentityHashMap<>();
+    private long nextSequence;
+
+    /**
+     * Registers a wrapper unless a plugin with the same ID is already registered.
+     *
+     * @param pluginWrapper the wrapper to add
+     * @return true if the wrapper was added
+     */
+    boolean add(PluginWrapper pluginWrapper) {
+        return addAll(List.of(pluginWrapper)).isEmpty();
+    }
+
+    /**
+     * Registers the wrappers in order, publishing a single new snapshot. A wrapper whose
+     * plugin ID is already registered, or taken by an earlier wrapper of the same batch, is
+     * not added.
+     *
+     * @param pluginWrappers the wrappers to add
+     * @return the wrappers that were rejected as duplicates; empty if all were added
+     */
+    synchronized List<PluginWrapper> addAll(List<PluginWrapper> pluginWrappers) {
+        Snapshot current = snapshot;
+        List<PluginWrapper> plugins = new ArrayList<>(current.plugins.size() + pluginWrappers.size());
+        plugins.addAll(current.plugins);
+        Map<String, PluginWrapper> pluginsById = new HashMap<>(current.pluginsById);
+        Map<PluginState, List<PluginWrapper>> pluginsByState = new EnumMap<>(current.pluginsByState);
+        Map<PluginState, List<PluginWrapper>> appended = new EnumMap<>(PluginState.class);
+        List<PluginWrapper> rejected = new ArrayList<>();
+        for (PluginWrapper pluginWrapper : pluginWrappers) {
+            if (pluginsById.putIfAbsent(pluginWrapper.getPluginDescriptor().getPluginId(), pluginWrapper) != null) {
+                rejected.add(pluginWrapper);
+                continue;
+            }
+            plugins.add(pluginWrapper);
+            PluginState state = pluginWrapper.getState();
+            registrations.put(pluginWrapper, new Registration(nextSequence++, state));
+            appended.computeIfAbsent(state, key -> new ArrayList<>(pluginsByState.get(key))).add(pluginWrapper);
+        }
+        if (rejected.size() == pluginWrappers.size()) {
+            return rejected;
+        }
+        appended.forEach((state, list) -> pluginsByState.put(state, Collections.unmodifiableList(list)));
+        snapshot = new Snapshot(Collections.unmodifiableList(plugins), Collections.unmodifiableMap(pluginsById), pluginsByState);
+        for (PluginWrapper pluginWrapper : pluginWrappers) {
+            if (registrations.containsKey(pluginWrapper)) {
+                pluginWrapper.addStateListener(this);
+            }
+        }
+        // A transition between taking the state above and adding the listener would be missed.
+        for (PluginWrapper pluginWrapper : pluginWrappers) {
+            if (registrations.containsKey(pluginWrapper)) {
+                syncState(pluginWrapper);
+            }
+        }
+        return rejected;
+    }
+
+    /**
+     * Removes the given wrappers; wrappers that are not registered are ignored.
+     *
+     * @param pluginWrappers the wrappers to remove
+     */
+    synchronized void removeAll(Collection<PluginWrapper> pluginWrappers) {
+        Snapshot current = snapshot;
+        Map<PluginWrapper, Registration> removed = new IdentityHashMap<>();
+        Map<String, PluginWrapper> pluginsById = new HashMap<>(current.pluginsById);
+        for (PluginWrapper pluginWrapper : pluginWrappers) {
+            Registration registration = registrations.remove(pluginWrapper);
+            if (registration != null) {
+                pluginsById.remove(pluginWrapper.getPluginDescriptor().getPluginId(), pluginWrapper);
+                pluginWrapper.removeStateListener(this);
+                removed.put(pluginWrapper, registration);
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+        List<PluginWrapper> plugins = without(current.plugins, removed);
+        Map<PluginState, List<PluginWrapper>> pluginsByState = new EnumMap<>(current.pluginsByState);
+        for (Registration registration : removed.values()) {
+            PluginState state = registration.listedState;
+            if (pluginsByState.get(state) == current.pluginsByState.get(state)) {
+                pluginsByState.put(state, without(current.pluginsByState.get(state), removed));
+            }
+        }
+        snapshot = new Snapshot(plugins, Collections.unmodifiableMap(pluginsById), pluginsByState);
+    }
+
+    /** Removes every wrapper. */
+    synchronized void clear() {
+        snapshot.plugins.forEach(pluginWrapper -> pluginWrapper.removeStateListener(this));
+        registrations.clear();
+        snapshot = Snapshot.EMPTY;
+    }
+
+    /** Returns the wrapper with the given plugin ID, or {@code null}. */
+    PluginWrapper getPlugin(String pluginId) {
+        return snapshot.pluginsById.get(pluginId);
+    }
+
+    /** Returns an unmodifiable snapshot of all wrappers in registration order. */
+    List<PluginWrapper> getPlugins() {
+        return snapshot.plugins;
+    }
+
+    /**
+     * Returns an unmodifiable snapshot of the wrappers in the given state, in registration
+     * order. The same list is returned until a wrapper enters or leaves the state.
+     *
+     * @param state the state to look up
+     * @return the matching wrappers; never null
+     */
+    List<PluginWrapper> getPlugins(PluginState state) {
+        return snapshot.pluginsByState.get(state);
+    }
+
+    /** Returns the number of wrappers currently in the given state. */
+    int count(PluginState state) {
+        return snapshot.pluginsByState.get(state).size();
+    }
+
+    /**
+     * Returns the dependency graph of the registered plugins. The graph is built from the
+     * current snapshot when the set of plugins changed since it was last built.
+     *
+     * @return the resolved graph; never null
+     */
+    DependencyGraph getDependencyGraph() {
+        Snapshot current = snapshot;
+        ResolvedGraph resolved = dependencyGraph;
+        // The plugins list is shared by every snapshot with the same membership.
+        if (resolved == null || resolved.plugins != current.plugins) {
+            List<PluginDescriptor> descriptors = new ArrayList<>(current.plugins.size());
+            current.plugins.forEach(pluginWrapper -> descriptors.add(pluginWrapper.getPluginDescriptor()));
+            resolved = new ResolvedGraph(current.plugins, new DependencyGraph(descriptors));
+            dependencyGraph = resolved;
+        }
+        return resolved.graph;
+    }
+
+    @Override
+    public synchronized void onStateChanged(PluginWrapper pluginWrapper, PluginState oldState, PluginState newState) {
+        syncState(pluginWrapper);
+    }
+
+    /** Moves a registered wrapper from the list it is in to the list of its current state. */
+    private void syncState(PluginWrapper pluginWrapper) {
+        Registration registration = registrations.get(pluginWrapper);
+        if (registration == null) {
+            return;
+        }
+        PluginState listedState = registration.listedState;
+        PluginState state = pluginWrapper.getState();
+        if (state == listedState) {
+            return;
+        }
+        Snapshot current = snapshot;
+        Map<PluginState, List<PluginWrapper>> pluginsByState = new EnumMap<>(current.pluginsByState);
+        List<PluginWrapper> left = new ArrayList<>(pluginsByState.get(listedState));
+        left.remove(indexOf(left, registration.sequence));
+        pluginsByState.put(listedState, left.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(left));
+        List<PluginWrapper> entered = new ArrayList<>(pluginsByState.get(state).size() + 1);
+        entered.addAll(pluginsByState.get(state));
+        entered.add(indexOf(entered, registration.sequence), pluginWrapper);
+        pluginsByState.put(state, Collections.unmodifiableList(entered));
+        registration.listedState = state;
+        snapshot = new Snapshot(current.plugins, current.pluginsById, pluginsByState);
+    }
+
+    /**
+     * Returns the position of the wrapper with the given sequence number in a list sorted by
+     * registration, or the position where it would be inserted.
+     */
+    private int indexOf(List<PluginWrapper> plugins, long sequence) {
+        int low = 0;
+        int high = plugins.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (registrations.get(plugins.get(middle)).sequence < sequence) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static List<PluginWrapper> without(List<PluginWrapper> plugins, Map<PluginWrapper, ?> removed) {
+        List<PluginWrapper> result = new ArrayList<>(plugins.size());
+        for (PluginWrapper pluginWrapper : plugins) {
+            if (!removed.containsKey(pluginWrapper)) {
+                result.add(pluginWrapper);
+            }
+        }
+        return result.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(result);
+    }
+
+    /** A registered wrapper's position in registration order and the state list it is in. */
+    private static final class Registration {
+        final long sequence;
+        PluginState listedState;
+
+        Registration(long sequence, PluginState listedState) {
+            this.sequence = sequence;
+            this.listedState = listedState;
+        }
+    }
+
+    /** Immutable view of the registry at one point in time. */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyList(), Collections.emptyMap(), emptyStates());
+
+        final List<PluginWrapper> plugins;
+        final Map<String, PluginWrapper> pluginsById;
+        final Map<PluginState, List<PluginWrapper>> pluginsByState;
+
+        /** Takes unmodifiable collections; {@code plugins} is shared while membership is unchanged. */
+        Snapshot(List<PluginWrapper> plugins, Map<String, PluginWrapper> pluginsById,
+                 Map<PluginState, List<PluginWrapper>> pluginsByState) {
+            this.plugins = plugins;
+            this.pluginsById = pluginsById;
+            this.pluginsByState = pluginsByState;
+        }
+
+        private static Map<PluginState, List<PluginWrapper>> emptyStates() {
+            Map<PluginState, List<PluginWrapper>> pluginsByState = new EnumMap<>(PluginState.class);
+            for (PluginState state : PluginState.values()) {
+                pluginsByState.put(state, Collections.emptyList());
+            }
+            return pluginsByState;
+        }
+    }
+
+    /** A dependency graph together with the plugins list it was built from. */
+    private static final class ResolvedGraph {
+        final List<PluginWrapper> plugins;
+        final DependencyGraph graph;
+
+        ResolvedGraph(List<PluginWrapper> plugins, DependencyGraph graph) {
+            this.plugins = plugins;
+            this.graph = graph;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package dev.siea.jonion.loader;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Multi-threaded class loading benchmark for {@link CustomClassLoader}.
+ * <p>
+ * Generates a JAR of small classes, then loads and initializes all of them through a fresh
+ * loader with 1, 2, 4, ... up to the given number of threads, each thread taking every n-th
+ * class. The same run is repeated with a plain {@link URLClassLoader} as a baseline. Because
+ * {@link CustomClassLoader} is parallel capable and locks per class name, its throughput should
+ * grow with the thread count instead of serializing on the loader. Run it with the test
+ * classpath, e.g.
+ * </p>
+ * <pre>{@code
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=dev.siea.jonion.loader.CustomClassLoaderBenchmark -Dexec.args="3000 8"
+ * }</pre>
+ * <p>
+ * Arguments (all optional): number of classes (default 3000), maximum thread count (default
+ * the number of available processors) and measured rounds per configuration (default 5). A
+ * JDK is required, since the classes are compiled at startup.
+ * </p>
+ *
+ * @see CustomClassLoader
+ */
+public final class CustomClassLoaderBenchmark {
+    private static final String PACKAGE = "bench";
+    private static final int WARMUP_ROUNDS = 3;
+
+    private CustomClassLoaderBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int classCount = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Path workDir = Files.createTempDirectory("jonion-classloading-bench");
+        try {
+            Path jar = generateJar(workDir, classCount);
+            System.out.printf("%d classes, up to %d threads, %d rounds%n", classCount, maxThreads, rounds);
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                int n = threads;
+                report("CustomClassLoader", n, classCount, rounds,
+                        () -> new CustomClassLoader(jar, CustomClassLoaderBenchmark.class.getClassLoader()));
+                report("URLClassLoader", n, classCount, rounds,
+                        () -> new URLClassLoader(new URL[]{jar.toUri().toURL()}, CustomClassLoaderBenchmark.class.getClassLoader()));
+            }
+        } finally {
+            deleteRecursively(workDir);
+        }
+    }
+
+    private static void report(String name, int threads, int classCount, int rounds, LoaderFactory factory) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run(factory, threads, classCount);
+        }
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < rounds; i++) {
+            long nanos = run(factory, threads, classCount);
+            best = Math.min(best, nanos);
+            total += nanos;
+        }
+        System.out.printf("%-18s %2d threads: best %8.2f ms, mean %8.2f ms, %,10d classes/s%n",
+                name, threads, best / 1e6, total / 1e6 / rounds, classCount * 1_000_000_000L / best);
+    }
+
+    private static long run(LoaderFactory factory, int threads, int classCount) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (URLClassLoader loader = factory.create()) {
+            List<Future<?>> futures = new ArrayList<>(threads);
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = first; i < classCount; i += threads) {
+                        Class.forName(PACKAGE + ".C" + i, true, loader);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Path generateJar(Path workDir, int classCount) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("The benchmark needs a JDK to compile its classes");
+        }
+        Path sourceDir = Files.createDirectories(workDir.resolve("src").resolve(PACKAGE));
+        Path classDir = Files.createDirectories(workDir.resolve("classes"));
+        List<String> compilerArgs = new ArrayList<>(List.of("-d", classDir.toString(), "-proc:none"));
+        for (int i = 0; i < classCount; i++) {
+            Path source = sourceDir.resolve("C" + i + ".java");
+            Files.writeString(source, "package " + PACKAGE + "; public class C" + i
+                    + " { static final int VALUE = " + i + "; public int value() { return VALUE; } }");
+            compilerArgs.add(source.toString());
+        }
+        if (compiler.run(null, null, null, compilerArgs.toArray(new String[0])) != 0) {
+            throw new IllegalStateException("Compiling the benchmark classes failed");
+        }
+
+        Path jar = workDir.resolve("bench.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar));
+             Stream<Path> classFiles = Files.walk(classDir)) {
+            for (Path classFile : (Iterable<Path>) classFiles.filter(Files::isRegularFile)::iterator) {
+                out.putNextEntry(new JarEntry(classDir.relativize(classFile).toString().replace('\\', '/')));
+                Files.copy(classFile, out);
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface LoaderFactory {
+        URLClassLoader create() throws IOException;
+    }
+}